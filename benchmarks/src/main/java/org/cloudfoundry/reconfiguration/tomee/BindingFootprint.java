@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start cost of binding the services of <code>VCAP_SERVICES</code>, through Spring Cloud Connectors and through {@link NativeServiceBinding}. Each binding runs first thing
+ * in a fresh JVM, with the Cloud Foundry environment of a generated {@link VcapServicesFixture}, and reports its elapsed time, the classes it loaded and the metaspace they take.
+ * Both bindings include the {@link VcapServicesSnapshot}, which the settings of the resources need either way, and exclude the Flight Recorder events, which the resolution sets
+ * up before binding. The medians of several runs are printed:
+ * <pre>
+ * java -cp benchmarks.jar org.cloudfoundry.reconfiguration.tomee.BindingFootprint [services] [runs]
+ * </pre>
+ */
+public final class BindingFootprint {
+
+    private static final String[] BINDINGS = new String[] { "connectors", "native" };
+
+    private static final String RESULT_PREFIX = "footprint ";
+
+    private BindingFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 2 && "--bind".equals(args[0])) {
+            bind(args[1]);
+            return;
+        }
+
+        final int services = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final VcapServicesFixture fixture = VcapServicesFixture.generate(services, VcapServicesFixture.Credentials.SMALL);
+
+        final List<List<long[]>> results = new ArrayList<>();
+        for (String ignored : BINDINGS) {
+            results.add(new ArrayList<long[]>());
+        }
+        for (int run = 0; run < runs; run++) {
+            for (int i = 0; i < BINDINGS.length; i++) {
+                results.get(i).add(fork(BINDINGS[i], fixture));
+            }
+        }
+
+        System.out.println("Binding of " + services + " services, median of " + runs + " runs");
+        System.out.println(String.format("%-12s %12s %12s %16s", "binding", "time (ms)", "classes", "metaspace (KB)"));
+        for (int i = 0; i < BINDINGS.length; i++) {
+            System.out.println(String.format("%-12s %12.1f %12d %16d", BINDINGS[i], median(results.get(i), 0) / 1000.0, median(results.get(i), 1), median(results.get(i), 2) / 1024));
+        }
+    }
+
+    /**
+     * Bind the services of the environment of this JVM and print the footprint of the binding
+     */
+    private static void bind(String binding) {
+        ResolutionEvents.isAvailable();
+        final EnvironmentAccessor environment = new EnvironmentAccessor();
+        final ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+        final long classes = classLoading.getTotalLoadedClassCount();
+        final long metaspace = getMetaspaceUsed();
+        final long start = System.nanoTime();
+
+        if ("native".equals(binding)) {
+            System.setProperty(NativeServiceBinding.NATIVE_BINDING_PROPERTY, "true");
+        }
+        final ServiceInfoIndex index = ServiceInfoIndex.bind(environment);
+        VcapServicesSnapshot.getInstance(environment, null);
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        if (index.size() == 0) {
+            throw new IllegalStateException("No service bound");
+        }
+        System.out.println(RESULT_PREFIX + elapsed + " " + (classLoading.getTotalLoadedClassCount() - classes) + " " + (getMetaspaceUsed() - metaspace));
+    }
+
+    private static long[] fork(String binding, VcapServicesFixture fixture) throws IOException, InterruptedException {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        final ProcessBuilder processBuilder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), BindingFootprint.class.getName(), "--bind", binding);
+        final Map<String, String> environment = processBuilder.environment();
+        environment.put(VcapServicesSnapshot.VCAP_SERVICES, fixture.getVcapServices());
+        environment.put("VCAP_APPLICATION", "{\"application_name\":\"benchmark\",\"instance_id\":\"0\"}");
+        processBuilder.redirectErrorStream(true);
+
+        final Process process = processBuilder.start();
+        long[] result = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    final String[] values = line.substring(RESULT_PREFIX.length()).split(" ");
+                    result = new long[] { Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]) };
+                } else {
+                    System.err.println(line);
+                }
+            }
+        }
+        if (process.waitFor() != 0 || result == null) {
+            throw new IllegalStateException("Binding with " + binding + " failed");
+        }
+        return result;
+    }
+
+    private static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(memoryPool.getName())) {
+                return memoryPool.getUsage().getUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long median(List<long[]> results, int index) {
+        final List<Long> values = new ArrayList<>(results.size());
+        for (long[] result : results) {
+            values.add(result[index]);
+        }
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+}
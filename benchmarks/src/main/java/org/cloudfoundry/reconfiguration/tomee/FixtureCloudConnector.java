@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.CloudConnector;
+import org.springframework.cloud.app.ApplicationInstanceInfo;
+import org.springframework.cloud.service.ServiceInfo;
+
+import java.util.List;
+
+/**
+ * CloudConnector serving the services of the current {@link VcapServicesFixture}, standing in for the Cloud Foundry connector which reads the process environment
+ */
+public class FixtureCloudConnector implements CloudConnector {
+
+    private static volatile VcapServicesFixture fixture;
+
+    static void setFixture(VcapServicesFixture fixture) {
+        FixtureCloudConnector.fixture = fixture;
+    }
+
+    @Override
+    public ApplicationInstanceInfo getApplicationInstanceInfo() {
+        return null;
+    }
+
+    @Override
+    public List<ServiceInfo> getServiceInfos() {
+        return fixture.getServiceInfos();
+    }
+
+    @Override
+    public boolean isInMatchingCloud() {
+        return fixture != null;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.service.ServiceInfo;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Resolution of relational resources through {@link DelegatingPropertiesProvider}, and the steps it is made of. Run with <code>-prof gc</code> to report the allocation per
+ * resolution.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResolutionBenchmark {
+
+    private static final Logger logger = Logger.getLogger("org.cloudfoundry.reconfiguration.tomee");
+
+    @Param({ "10", "100", "1000" })
+    private int services;
+
+    @Param({ "small", "certificates" })
+    private String credentials;
+
+    private VcapServicesFixture fixture;
+
+    private List<String> resourceIds;
+
+    private List<ServiceInfo> serviceInfos;
+
+    private PropertiesProviderRegistry registry;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        logger.setLevel(java.util.logging.Level.WARNING);
+
+        fixture = VcapServicesFixture.generate(services, VcapServicesFixture.Credentials.valueOf(credentials.toUpperCase(Locale.ENGLISH)));
+        resourceIds = fixture.getRelationalResourceIds();
+        serviceInfos = fixture.getServiceInfos();
+        registry = PropertiesProviderRegistry.getInstance();
+
+        FixtureCloudConnector.setFixture(fixture);
+        DelegatingPropertiesProvider.reset();
+        DelegatingPropertiesProvider.prepare();
+    }
+
+    /**
+     * Resolution of a resource once the bound services are indexed, as for every resource deployed after the first one
+     */
+    @Benchmark
+    public Properties provides() {
+        final DelegatingPropertiesProvider provider = new DelegatingPropertiesProvider();
+        provider.setServiceId(resourceIds.get(next++ % resourceIds.size()));
+        provider.setProperties(new Properties());
+        return provider.provides();
+    }
+
+    /**
+     * Resolution of the first resource, including the creation of the <code>Cloud</code> and of the resolution plan
+     */
+    @Benchmark
+    public Properties providesFirst() {
+        DelegatingPropertiesProvider.reset();
+        final DelegatingPropertiesProvider provider = new DelegatingPropertiesProvider();
+        provider.setServiceId(resourceIds.get(0));
+        provider.setProperties(new Properties());
+        return provider.provides();
+    }
+
+    @Benchmark
+    public ResolutionPlan buildResolutionPlan() {
+        return ResolutionPlan.build(ServiceInfoIndex.of(serviceInfos), registry);
+    }
+
+    @Benchmark
+    public PropertiesProvider findPropertiesProvider() {
+        return registry.find(serviceInfos.get(next++ % serviceInfos.size()));
+    }
+}
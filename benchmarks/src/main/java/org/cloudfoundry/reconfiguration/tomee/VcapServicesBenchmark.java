@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonFactory;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of <code>VCAP_SERVICES</code> into the {@link VcapServicesSnapshot} shared by the providers. Run with <code>-prof gc</code> to report the allocation per parse.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class VcapServicesBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int services;
+
+    @Param({ "small", "certificates" })
+    private String credentials;
+
+    private VcapServicesFixture fixture;
+
+    private ObjectMapper objectMapper;
+
+    private JsonFactory jsonFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = VcapServicesFixture.generate(services, VcapServicesFixture.Credentials.valueOf(credentials.toUpperCase(Locale.ENGLISH)));
+        objectMapper = new ObjectMapper();
+        jsonFactory = new JsonFactory();
+    }
+
+    @Benchmark
+    public VcapServicesSnapshot parse() {
+        return VcapServicesSnapshot.parse(fixture.getVcapServices(), objectMapper);
+    }
+
+    @Benchmark
+    public VcapServicesSnapshot parseStreaming() {
+        return VcapServicesSnapshot.parse(fixture.getVcapServices(), jsonFactory);
+    }
+}
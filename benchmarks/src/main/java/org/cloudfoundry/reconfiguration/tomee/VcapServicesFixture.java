@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.service.BaseServiceInfo;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.service.common.DB2ServiceInfo;
+import org.springframework.cloud.service.common.OracleServiceInfo;
+import org.springframework.cloud.service.common.PostgresqlServiceInfo;
+import org.springframework.cloud.service.common.SqlServerServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generated <code>VCAP_SERVICES</code> content, and the {@link ServiceInfo} instances Spring Cloud would create for it. Services cycle through the relational services supported
+ * by this library and user provided services resolved by {@link GenericServicePropertiesProvider}.
+ */
+final class VcapServicesFixture {
+
+    /**
+     * Size of the credentials of the generated services
+     */
+    enum Credentials {
+
+        /**
+         * Connection details only
+         */
+        SMALL,
+
+        /**
+         * Connection details and a CA certificate, a client certificate and a private key in PEM format
+         */
+        CERTIFICATES
+    }
+
+    private static final int KINDS = 5;
+
+    private static final int PEM_LINE_LENGTH = 64;
+
+    private final String vcapServices;
+
+    private final List<ServiceInfo> serviceInfos;
+
+    private final List<String> relationalResourceIds;
+
+    private final List<String> genericResourceIds;
+
+    private VcapServicesFixture(String vcapServices, List<ServiceInfo> serviceInfos, List<String> relationalResourceIds, List<String> genericResourceIds) {
+        this.vcapServices = vcapServices;
+        this.serviceInfos = Collections.unmodifiableList(serviceInfos);
+        this.relationalResourceIds = Collections.unmodifiableList(relationalResourceIds);
+        this.genericResourceIds = Collections.unmodifiableList(genericResourceIds);
+    }
+
+    static VcapServicesFixture generate(int services, Credentials credentials) {
+        final Random random = new Random(services);
+        final List<ServiceInfo> serviceInfos = new ArrayList<>(services);
+        final List<String> relationalResourceIds = new ArrayList<>(services);
+        final List<String> genericResourceIds = new ArrayList<>(services);
+
+        final StringBuilder json = new StringBuilder(services * (credentials == Credentials.CERTIFICATES ? 8192 : 512));
+        json.append("{\"user-provided\":[");
+        for (int i = 0; i < services; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+
+            final String name = "service-" + i;
+            final String uri;
+            switch (i % KINDS) {
+                case 0:
+                    uri = "postgres://user" + i + ":secret" + i + "@db" + i + ".example.com:5432/db" + i;
+                    serviceInfos.add(new PostgresqlServiceInfo(name, uri));
+                    break;
+                case 1:
+                    uri = "sqlserver://user" + i + ":secret" + i + "@db" + i + ".example.com:1433/db" + i;
+                    serviceInfos.add(new SqlServerServiceInfo(name, uri));
+                    break;
+                case 2:
+                    uri = "db2://user" + i + ":secret" + i + "@db" + i + ".example.com:50000/db" + i;
+                    serviceInfos.add(new DB2ServiceInfo(name, uri));
+                    break;
+                case 3:
+                    uri = "oracle://user" + i + ":secret" + i + "@db" + i + ".example.com:1521/db" + i;
+                    serviceInfos.add(new OracleServiceInfo(name, uri));
+                    break;
+                default:
+                    uri = "https://api" + i + ".example.com";
+                    serviceInfos.add(new BaseServiceInfo(name));
+                    break;
+            }
+
+            json.append("{\"name\":\"").append(name).append("\",\"label\":\"user-provided\",\"tags\":[\"benchmark\"],\"credentials\":{");
+            if (i % KINDS == KINDS - 1) {
+                genericResourceIds.add("app/" + name);
+                json.append("\"id\":\"").append(name).append("\",");
+            } else {
+                relationalResourceIds.add("app/jdbc/" + name);
+            }
+            json.append("\"uri\":\"").append(uri).append("\",\"username\":\"user").append(i).append("\",\"password\":\"secret").append(i).append('"');
+            if (credentials == Credentials.CERTIFICATES) {
+                json.append(",\"ca_certificate\":\"").append(pem("CERTIFICATE", 1400, random)).append('"');
+                json.append(",\"certificate\":\"").append(pem("CERTIFICATE", 1200, random)).append('"');
+                json.append(",\"private_key\":\"").append(pem("PRIVATE KEY", 1700, random)).append('"');
+            }
+            json.append("}}");
+        }
+        json.append("]}");
+
+        return new VcapServicesFixture(json.toString(), serviceInfos, relationalResourceIds, genericResourceIds);
+    }
+
+    String getVcapServices() {
+        return vcapServices;
+    }
+
+    List<ServiceInfo> getServiceInfos() {
+        return serviceInfos;
+    }
+
+    /**
+     * TomEE resource ids of the relational services
+     */
+    List<String> getRelationalResourceIds() {
+        return relationalResourceIds;
+    }
+
+    /**
+     * TomEE resource ids of the user provided services
+     */
+    List<String> getGenericResourceIds() {
+        return genericResourceIds;
+    }
+
+    EnvironmentAccessor getEnvironment() {
+        return new EnvironmentAccessor() {
+
+            @Override
+            public String getEnvValue(String key) {
+                return VcapServicesSnapshot.VCAP_SERVICES.equals(key) ? vcapServices : super.getEnvValue(key);
+            }
+        };
+    }
+
+    /**
+     * A PEM block of random base64 content, with escaped line breaks as in JSON
+     */
+    private static String pem(String type, int length, Random random) {
+        final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        final StringBuilder pem = new StringBuilder(length + length / PEM_LINE_LENGTH * 2 + 64);
+        pem.append("-----BEGIN ").append(type).append("-----\\n");
+        for (int i = 0; i < length; i++) {
+            pem.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            if ((i + 1) % PEM_LINE_LENGTH == 0) {
+                pem.append("\\n");
+            }
+        }
+        pem.append("\\n-----END ").append(type).append("-----\\n");
+        return pem.toString();
+    }
+}
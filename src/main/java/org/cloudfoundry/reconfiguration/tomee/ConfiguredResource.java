@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A resource configured by this library. The pool attributes are read through reflection from the datasource bound under <code>openejb:Resource/&lt;resource id&gt;</code>, so
+ * both the tomcat-jdbc and the commons-dbcp2 pools of TomEE are supported without depending on them.
+ *
+ * @see ConfiguredResources
+ */
+final class ConfiguredResource implements ConfiguredResourceMXBean {
+
+    static final String JNDI_PREFIX = "openejb:Resource/";
+
+    private static final Logger logger = Logger.getLogger(ConfiguredResource.class.getName());
+
+    private final String resourceId;
+
+    private final String propertiesProvider;
+
+    private final Map<String, String> properties;
+
+    private final long resolutionNanos;
+
+    private volatile WeakReference<Object> dataSource = new WeakReference<>(null);
+
+    ConfiguredResource(String resourceId, String propertiesProvider, Map<String, String> properties, long resolutionNanos) {
+        this.resourceId = resourceId;
+        this.propertiesProvider = propertiesProvider;
+        this.properties = Collections.unmodifiableMap(properties);
+        this.resolutionNanos = resolutionNanos;
+    }
+
+    @Override
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    @Override
+    public String getPropertiesProvider() {
+        return propertiesProvider;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    @Override
+    public double getResolutionTimeMillis() {
+        return resolutionNanos / 1000000.0;
+    }
+
+    @Override
+    public String getPoolClass() {
+        final Object pool = getDataSource();
+        return pool == null ? null : pool.getClass().getName();
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return getPoolAttribute("getActive", "getNumActive");
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return getPoolAttribute("getIdle", "getNumIdle");
+    }
+
+    @Override
+    public int getMaxActiveConnections() {
+        return getPoolAttribute("getMaxActive", "getMaxTotal");
+    }
+
+    @Override
+    public int getWaitingThreads() {
+        return getPoolAttribute("getWaitCount", "getNumWaiters");
+    }
+
+    /**
+     * The datasource of the resource, looked up until it is bound
+     */
+    Object getDataSource() {
+        Object candidate = dataSource.get();
+        if (candidate == null) {
+            try {
+                candidate = unwrap(new InitialContext().lookup(JNDI_PREFIX + resourceId));
+                dataSource = new WeakReference<>(candidate);
+            } catch (NamingException | RuntimeException e) {
+                if (logger.isLoggable(Level.FINEST)) {
+                    logger.log(Level.FINEST, "Cannot look up datasource of resource " + resourceId, e);
+                }
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * The value of the first getter the datasource implements, or <code>-1</code>
+     */
+    private int getPoolAttribute(String... getters) {
+        final Object pool = getDataSource();
+        if (pool == null) {
+            return -1;
+        }
+
+        for (String getter : getters) {
+            final Object value = invoke(pool, getter);
+            if (value instanceof Number) {
+                return ((Number) value).intValue();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * TomEE may bind a proxy of the datasource, whose handler exposes the datasource through <code>getDelegate()</code>
+     */
+    private static Object unwrap(Object candidate) {
+        if (candidate != null && Proxy.isProxyClass(candidate.getClass())) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(candidate);
+            final Object delegate = invoke(handler, "getDelegate");
+            if (delegate != null) {
+                return delegate;
+            }
+        }
+        return candidate;
+    }
+
+    private static Object invoke(Object target, String name) {
+        try {
+            final Method method = target.getClass().getMethod(name);
+            return method.invoke(target);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import java.util.Map;
+
+/**
+ * Management interface of a resource configured by this library, registered as <code>org.cloudfoundry.reconfiguration.tomee:type=ConfiguredResource,name=&lt;resource id&gt;</code>.
+ * The pool attributes are read from the datasource bound in JNDI, and are <code>-1</code> when the datasource or the attribute is not available.
+ */
+public interface ConfiguredResourceMXBean {
+
+    String getResourceId();
+
+    /**
+     * Class of the properties provider which configured the resource
+     */
+    String getPropertiesProvider();
+
+    /**
+     * Configuration of the resource, with passwords and secrets masked
+     */
+    Map<String, String> getProperties();
+
+    double getResolutionTimeMillis();
+
+    /**
+     * Connection pool backing the resource, or <code>null</code> if it is not available
+     */
+    String getPoolClass();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getMaxActiveConnections();
+
+    /**
+     * Threads waiting for a connection
+     */
+    int getWaitingThreads();
+}
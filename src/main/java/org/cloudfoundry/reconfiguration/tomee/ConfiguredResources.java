@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * JVM-wide registry of the resources configured by {@link DelegatingPropertiesProvider} and {@link GenericServicePropertiesProvider}. Each resource is registered as a
+ * {@link ConfiguredResourceMXBean} in the platform MBean server, unless the system property {@value #JMX_PROPERTY} is <code>false</code>.
+ */
+final class ConfiguredResources {
+
+    /**
+     * System property disabling the registration of the MBeans
+     */
+    static final String JMX_PROPERTY = "org.cloudfoundry.reconfiguration.tomee.jmx";
+
+    static final String DOMAIN = "org.cloudfoundry.reconfiguration.tomee";
+
+    static final String MASK = "******";
+
+    private static final String[] SECRET_KEY_MARKERS = new String[] { "password", "secret", "token", "credential", "key" };
+
+    private static final Pattern URL_USER_INFO = Pattern.compile("(://[^:/@\\s]+:)[^@/\\s]+@");
+
+    private static final Pattern URL_PASSWORD = Pattern.compile("((?i)password=)[^&;]*");
+
+    private static final Logger logger = Logger.getLogger(ConfiguredResources.class.getName());
+
+    private static final ConcurrentMap<String, ConfiguredResource> resources = new ConcurrentHashMap<>();
+
+    private ConfiguredResources() {
+    }
+
+    /**
+     * Record the configuration of a resource, replacing a previous configuration of the same resource
+     *
+     * @param resourceId         TomEE resource id
+     * @param propertiesProvider Class of the provider which configured the resource
+     * @param properties         Configuration of the resource
+     * @param resolutionNanos    Time spent configuring the resource
+     */
+    static void record(String resourceId, String propertiesProvider, Properties properties, long resolutionNanos) {
+        if (resourceId == null || properties == null) {
+            return;
+        }
+
+        final ConfiguredResource resource = new ConfiguredResource(resourceId, propertiesProvider, mask(properties), resolutionNanos);
+        resources.put(resourceId, resource);
+
+        if (!"false".equalsIgnoreCase(System.getProperty(JMX_PROPERTY))) {
+            register(resource);
+        }
+    }
+
+    static ConfiguredResource get(String resourceId) {
+        return resources.get(resourceId);
+    }
+
+    static Collection<ConfiguredResource> getAll() {
+        return Collections.unmodifiableCollection(resources.values());
+    }
+
+    static ObjectName getObjectName(String resourceId) throws JMException {
+        return new ObjectName(DOMAIN + ":type=ConfiguredResource,name=" + ObjectName.quote(resourceId));
+    }
+
+    /**
+     * Copy properties, masking the values of secret keys and the passwords embedded in URLs
+     */
+    static Map<String, String> mask(Properties properties) {
+        final Map<String, String> masked = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            masked.put(key, mask(key, properties.getProperty(key)));
+        }
+        return masked;
+    }
+
+    private static String mask(String key, String value) {
+        final String lowerCaseKey = key.toLowerCase(Locale.ENGLISH);
+        for (String marker : SECRET_KEY_MARKERS) {
+            if (lowerCaseKey.contains(marker)) {
+                return MASK;
+            }
+        }
+        return URL_PASSWORD.matcher(URL_USER_INFO.matcher(value).replaceAll("$1" + MASK + "@")).replaceAll("$1" + MASK);
+    }
+
+    private static void register(ConfiguredResource resource) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = getObjectName(resource.getResourceId());
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(resource, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Cannot register MBean of resource " + resource.getResourceId(), e);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opt-in warm-up of the connection pools of relational resources, enabled with the <code>warm-up</code> setting. Once TomEE binds the datasource of a resource, the connections of
+ * its pool are opened in parallel, so the first requests after a deployment do not pay the connection setup. The warm-up runs in the background and never delays the
+ * deployment.
+ * <ul>
+ * <li><code>warm-up-connections</code>: connections to open, by default the size of the pool (<code>maxActive</code> or <code>maxTotal</code>). The pools of bound services keep no
+ * minimum of idle connections, so the warmed up connections stay idle in the pool up to <code>maxIdle</code> until the evictor closes them. When the size of the pool is unknown,
+ * the largest of <code>minIdle</code>, <code>initialSize</code> and 1.</li>
+ * <li><code>warm-up-timeout</code>: time in milliseconds to wait for the datasource and its connections, {@value #DEFAULT_TIMEOUT} by default.</li>
+ * <li><code>warm-up-total-timeout</code>: time in milliseconds, from the first warm-up of a deployment, after which no more connections are waited for,
+ * {@value #DEFAULT_TOTAL_TIMEOUT} by default.</li>
+ * </ul>
+ *
+ * @see ResourceSettings
+ */
+final class ConnectionWarmUp {
+
+    static final String SETTING_WARM_UP = "warm-up";
+
+    static final String SETTING_WARM_UP_CONNECTIONS = "warm-up-connections";
+
+    static final String SETTING_WARM_UP_TIMEOUT = "warm-up-timeout";
+
+    static final String SETTING_WARM_UP_TOTAL_TIMEOUT = "warm-up-total-timeout";
+
+    static final int DEFAULT_TIMEOUT = 30000;
+
+    static final int DEFAULT_TOTAL_TIMEOUT = 60000;
+
+    private static final long LOOKUP_INTERVAL = 100;
+
+    private static final String[] CONNECTIONS_PROPERTIES = new String[] { "minIdle", "initialSize" };
+
+    private static final String[] POOL_SIZE_PROPERTIES = new String[] { "maxActive", "maxTotal" };
+
+    private static final Logger logger = Logger.getLogger(ConnectionWarmUp.class.getName());
+
+    private static final ConnectionWarmUp instance = new ConnectionWarmUp();
+
+    private final Object monitor = new Object();
+
+    private ExecutorService executor;
+
+    private long deadline;
+
+    private ConnectionWarmUp() {
+    }
+
+    static ConnectionWarmUp getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedule the warm-up of a resource when its <code>warm-up</code> setting is enabled. The warm-up settings are removed from the configuration.
+     *
+     * @param resourceId    TomEE resource id
+     * @param configuration Configuration of the resource
+     * @param service       Bound service of the resource, may be <code>null</code>
+     */
+    void schedule(final String resourceId, Properties configuration, VcapService service) {
+        final ResourceSettings settings = new ResourceSettings(configuration, service);
+        final boolean enabled = settings.getBoolean(SETTING_WARM_UP, false);
+        final int connections = settings.getInt(SETTING_WARM_UP_CONNECTIONS, getDefaultConnections(configuration));
+        final long timeout = settings.getInt(SETTING_WARM_UP_TIMEOUT, DEFAULT_TIMEOUT);
+        final int totalTimeout = settings.getInt(SETTING_WARM_UP_TOTAL_TIMEOUT, DEFAULT_TOTAL_TIMEOUT);
+        if (!enabled || connections <= 0) {
+            return;
+        }
+
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final long resourceDeadline = Math.min(System.currentTimeMillis() + timeout, getDeadline(totalTimeout));
+        getExecutor().submit(new Runnable() {
+
+            @Override
+            public void run() {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader previous = thread.getContextClassLoader();
+                thread.setContextClassLoader(classLoader);
+                try {
+                    warmUp(resourceId, new Callable<Object>() {
+
+                        @Override
+                        public Object call() {
+                            final ConfiguredResource resource = ConfiguredResources.get(resourceId);
+                            return resource == null ? null : resource.getDataSource();
+                        }
+                    }, connections, resourceDeadline);
+                } finally {
+                    thread.setContextClassLoader(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for the datasource of a resource and open connections in parallel
+     *
+     * @param resourceId  TomEE resource id, used for logging
+     * @param dataSource  Looks up the datasource, returns <code>null</code> while it is not bound
+     * @param connections Number of connections to open
+     * @param deadline    Time after which no more connections are waited for, in milliseconds since the epoch
+     * @return The connect latency of each opened connection in milliseconds
+     */
+    List<Long> warmUp(String resourceId, Callable<Object> dataSource, int connections, long deadline) {
+        final long start = System.currentTimeMillis();
+        final DataSource bound = awaitDataSource(resourceId, dataSource, deadline);
+        if (bound == null) {
+            logger.warning("Cannot warm up " + resourceId + ": its datasource is not bound after " + (System.currentTimeMillis() - start) + " ms");
+            return new ArrayList<>();
+        }
+
+        final List<PendingConnection> pendingConnections = new ArrayList<>(connections);
+        final List<Future<Long>> connectLatencies = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            final PendingConnection pendingConnection = new PendingConnection(bound);
+            pendingConnections.add(pendingConnection);
+            connectLatencies.add(getExecutor().submit(pendingConnection));
+        }
+
+        final List<Long> latencies = new ArrayList<>(connections);
+        try {
+            for (Future<Long> connectLatency : connectLatencies) {
+                try {
+                    latencies.add(connectLatency.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (Exception e) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "Cannot open connection of " + resourceId, e);
+                    }
+                }
+            }
+        } finally {
+            for (PendingConnection pendingConnection : pendingConnections) {
+                pendingConnection.abandon();
+            }
+        }
+
+        report(resourceId, connections, latencies, System.currentTimeMillis() - start);
+        return latencies;
+    }
+
+    private static DataSource awaitDataSource(String resourceId, Callable<Object> dataSource, long deadline) {
+        while (true) {
+            try {
+                final Object candidate = dataSource.call();
+                if (candidate instanceof DataSource) {
+                    return (DataSource) candidate;
+                }
+                if (candidate != null) {
+                    logger.warning("Cannot warm up " + resourceId + ": " + candidate.getClass().getName() + " is not a DataSource");
+                    return null;
+                }
+            } catch (Exception e) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Cannot look up datasource of " + resourceId, e);
+                }
+            }
+
+            if (System.currentTimeMillis() + LOOKUP_INTERVAL > deadline) {
+                return null;
+            }
+            try {
+                Thread.sleep(LOOKUP_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private static void report(String resourceId, int connections, List<Long> latencies, long elapsed) {
+        long max = 0;
+        long total = 0;
+        for (long latency : latencies) {
+            max = Math.max(max, latency);
+            total += latency;
+        }
+
+        if (latencies.size() < connections) {
+            logger.warning("Warmed up " + latencies.size() + " of " + connections + " connections of " + resourceId + " in " + elapsed + " ms");
+        } else {
+            logger.info("Warmed up " + connections + " connections of " + resourceId + " in " + elapsed + " ms (connect latency: average=" + total / connections + " ms, max=" + max
+                    + " ms)");
+        }
+    }
+
+    private static void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Cannot return warm-up connection", e);
+        }
+    }
+
+    static int getDefaultConnections(Properties configuration) {
+        for (String property : POOL_SIZE_PROPERTIES) {
+            final int poolSize = toInt(configuration.getProperty(property), -1);
+            if (poolSize > 0) {
+                return poolSize;
+            }
+        }
+        int connections = 1;
+        for (String property : CONNECTIONS_PROPERTIES) {
+            connections = Math.max(connections, toInt(configuration.getProperty(property), 0));
+        }
+        return connections;
+    }
+
+    private static int toInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private long getDeadline(int totalTimeout) {
+        synchronized (monitor) {
+            final long now = System.currentTimeMillis();
+            if (now > deadline) {
+                deadline = now + totalTimeout;
+            }
+            return deadline;
+        }
+    }
+
+    private ExecutorService getExecutor() {
+        synchronized (monitor) {
+            if (executor == null) {
+                executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        final Thread thread = new Thread(runnable, "resource-warm-up-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Opens a connection and hands it over to the warm-up exactly once: the warm-up closes the connections handed over before it is abandoned, the task closes the ones opened
+     * afterwards
+     */
+    private static final class PendingConnection implements Callable<Long> {
+
+        private static final Object ABANDONED = new Object();
+
+        private final DataSource dataSource;
+
+        private final AtomicReference<Object> handover = new AtomicReference<>();
+
+        private PendingConnection(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * @return The connect latency in milliseconds, or <code>null</code> if the warm-up was abandoned
+         */
+        @Override
+        public Long call() throws SQLException {
+            final long connectStart = System.nanoTime();
+            final Connection connection = dataSource.getConnection();
+            if (!handover.compareAndSet(null, connection)) {
+                close(connection);
+                return null;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+        }
+
+        void abandon() {
+            final Object connection = handover.getAndSet(ABANDONED);
+            if (connection instanceof Connection) {
+                close((Connection) connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resources of the container the application runs in. The memory limit is read from the <code>limits.mem</code> entry of <code>VCAP_APPLICATION</code>, or from the cgroup memory
+ * limit when not running on Cloud Foundry. The number of instances is read from the <code>instances</code> entry of <code>VCAP_APPLICATION</code> when the platform provides it.
+ */
+public final class ContainerResources {
+
+    /**
+     * Marker of an unknown memory limit
+     */
+    public static final int UNKNOWN = -1;
+
+    static final String VCAP_APPLICATION = "VCAP_APPLICATION";
+
+    private static final String[] CGROUP_MEMORY_LIMITS = new String[] { "/sys/fs/cgroup/memory.max", "/sys/fs/cgroup/memory/memory.limit_in_bytes" };
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private static final Logger logger = Logger.getLogger(ContainerResources.class.getName());
+
+    private static volatile ContainerResources instance;
+
+    private final int memoryLimit;
+
+    private final int availableProcessors;
+
+    private final int instances;
+
+    public ContainerResources(int memoryLimit, int availableProcessors) {
+        this(memoryLimit, availableProcessors, UNKNOWN);
+    }
+
+    public ContainerResources(int memoryLimit, int availableProcessors, int instances) {
+        this.memoryLimit = memoryLimit;
+        this.availableProcessors = availableProcessors;
+        this.instances = instances;
+    }
+
+    public static ContainerResources getInstance() {
+        if (instance == null) {
+            instance = of(new EnvironmentAccessor());
+        }
+        return instance;
+    }
+
+    static ContainerResources of(EnvironmentAccessor environment) {
+        final Map<String, Object> vcapApplication = parseVcapApplication(environment.getEnvValue(VCAP_APPLICATION));
+
+        int memoryLimit = UNKNOWN;
+        final Object limits = vcapApplication.get("limits");
+        if (limits instanceof Map) {
+            memoryLimit = toInt(((Map<?, ?>) limits).get("mem"));
+        }
+        if (memoryLimit == UNKNOWN) {
+            memoryLimit = readCgroupMemoryLimit();
+        }
+
+        return new ContainerResources(memoryLimit, Runtime.getRuntime().availableProcessors(), toInt(vcapApplication.get("instances")));
+    }
+
+    /**
+     * The memory limit of the container in megabytes, or {@link #UNKNOWN}
+     */
+    public int getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public int getAvailableProcessors() {
+        return availableProcessors;
+    }
+
+    /**
+     * The number of instances of the application, or {@link #UNKNOWN} when <code>VCAP_APPLICATION</code> does not provide it
+     */
+    public int getInstances() {
+        return instances;
+    }
+
+    @Override
+    public String toString() {
+        return "ContainerResources{memoryLimit=" + (memoryLimit == UNKNOWN ? "unknown" : memoryLimit + "MB") + ", availableProcessors=" + availableProcessors + ", instances="
+                + (instances == UNKNOWN ? "unknown" : instances) + "}";
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> parseVcapApplication(String vcapApplication) {
+        if (vcapApplication != null && vcapApplication.length() > 0) {
+            try {
+                return new ObjectMapper().readValue(vcapApplication, Map.class);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Cannot parse " + VCAP_APPLICATION, e);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    static int toInt(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static int readCgroupMemoryLimit() {
+        for (String path : CGROUP_MEMORY_LIMITS) {
+            final File file = new File(path);
+            if (!file.canRead()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "US-ASCII"))) {
+                final String line = reader.readLine();
+                if (line != null && !line.trim().equals("max")) {
+                    final long limit = Long.parseLong(line.trim()) / MEGABYTE;
+                    if (limit > 0 && limit < Integer.MAX_VALUE) {
+                        return (int) limit;
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Cannot read the cgroup memory limit from " + path, e);
+                }
+            }
+        }
+        return UNKNOWN;
+    }
+}
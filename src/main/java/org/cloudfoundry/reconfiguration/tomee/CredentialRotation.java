@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonFactory;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.service.common.RelationalServiceInfo;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Opt-in rotation of the credentials of relational resources, enabled with the <code>credentials-file</code> setting. The file is watched with a {@link WatchService} and, when
+ * the user name or password of the service changes, the new credentials are pushed into the live connection pool: new connections use them and the connections opened with the
+ * previous credentials are closed as they are returned, so the application neither restarts nor starts over with a cold pool. The setting points at either
+ * <ul>
+ * <li>a file holding a <code>VCAP_SERVICES</code> document, in which the service is looked up by name,</li>
+ * <li>or a directory holding one file per credential, such as <code>username</code> and <code>password</code>, as mounted by Kubernetes service bindings.</li>
+ * </ul>
+ * The tomcat-jdbc pool purges its connections on return. The commons-dbcp2 pool is restarted when it supports it, otherwise the new credentials apply to the connections it
+ * opens once it is restarted.
+ *
+ * @see ResourceSettings
+ */
+final class CredentialRotation {
+
+    static final String SETTING_CREDENTIALS_FILE = "credentials-file";
+
+    private static final String[] USER_NAME_CREDENTIALS = new String[] { "username", "user" };
+
+    private static final String PASSWORD_CREDENTIAL = "password";
+
+    private static final String PROPERTY_USER_NAME = "UserName";
+
+    private static final String PROPERTY_PASSWORD = "Password";
+
+    private static final Pattern URL_CREDENTIALS = Pattern.compile("([?&;:](user|password)=)([^&;]*)", Pattern.CASE_INSENSITIVE);
+
+    private static final Logger logger = Logger.getLogger(CredentialRotation.class.getName());
+
+    private static final CredentialRotation instance = new CredentialRotation();
+
+    private final Object monitor = new Object();
+
+    private final Map<Path, List<WatchedResource>> watchedResources = new HashMap<>();
+
+    private WatchService watchService;
+
+    private CredentialRotation() {
+    }
+
+    static CredentialRotation getInstance() {
+        return instance;
+    }
+
+    /**
+     * Watch the credentials of a resource when its <code>credentials-file</code> setting is set. The setting is removed from the configuration.
+     *
+     * @param resourceId    TomEE resource id
+     * @param configuration Configuration of the resource
+     * @param serviceName   Name of the bound service of the resource
+     * @param service       Bound service of the resource, may be <code>null</code>
+     */
+    void watch(final String resourceId, Properties configuration, String serviceName, VcapService service) {
+        final String credentialsFile = new ResourceSettings(configuration, service).get(SETTING_CREDENTIALS_FILE);
+        if (credentialsFile == null || credentialsFile.isEmpty()) {
+            return;
+        }
+
+        watch(resourceId, Paths.get(credentialsFile), serviceName, configuration.getProperty(PROPERTY_USER_NAME), configuration.getProperty(PROPERTY_PASSWORD),
+                new Callable<Object>() {
+
+                    @Override
+                    public Object call() {
+                        final ConfiguredResource resource = ConfiguredResources.get(resourceId);
+                        return resource == null ? null : resource.getDataSource();
+                    }
+                });
+    }
+
+    /**
+     * Watch a credentials file
+     *
+     * @param resourceId  TomEE resource id, used for logging
+     * @param path        The file or directory holding the credentials
+     * @param serviceName Name of the service in the credentials file
+     * @param userName    User name the pool connects with
+     * @param password    Password the pool connects with
+     * @param dataSource  Looks up the datasource, returns <code>null</code> while it is not bound
+     */
+    void watch(String resourceId, Path path, String serviceName, String userName, String password, Callable<Object> dataSource) {
+        final Path absolutePath = path.toAbsolutePath();
+        final Path directory = Files.isDirectory(absolutePath) ? absolutePath : absolutePath.getParent();
+        final WatchedResource watchedResource = new WatchedResource(resourceId, absolutePath, serviceName, userName, password, dataSource);
+
+        synchronized (monitor) {
+            try {
+                List<WatchedResource> resources = watchedResources.get(directory);
+                if (resources == null) {
+                    directory.register(getWatchService(), StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    resources = new ArrayList<>();
+                    watchedResources.put(directory, resources);
+                }
+                resources.add(watchedResource);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Cannot watch the credentials of " + resourceId + " in " + absolutePath, e);
+                return;
+            }
+        }
+        logger.info("Watching the credentials of " + resourceId + " in " + absolutePath);
+    }
+
+    /**
+     * Replace the user name and password embedded in a JDBC URL, as <code>user</code> and <code>password</code> parameters or as the <code>user/password@</code> of Oracle URLs
+     */
+    static String withCredentials(String jdbcUrl, String previousUserName, String previousPassword, String userName, String password) {
+        final Matcher matcher = URL_CREDENTIALS.matcher(jdbcUrl);
+        final StringBuffer url = new StringBuffer(jdbcUrl.length());
+        while (matcher.find()) {
+            final String value = "user".equalsIgnoreCase(matcher.group(2)) ? userName : password;
+            matcher.appendReplacement(url, Matcher.quoteReplacement(matcher.group(1) + value));
+        }
+        matcher.appendTail(url);
+
+        final String previousUserInfo = ":" + previousUserName + "/" + previousPassword + "@";
+        return previousUserName == null ? url.toString() : url.toString().replace(previousUserInfo, ":" + userName + "/" + password + "@");
+    }
+
+    /**
+     * Read the credentials of a service from a credentials file
+     *
+     * @return The credentials, empty if the file does not list the service
+     * @throws IOException In case the file cannot be read
+     */
+    static Map<String, Object> readCredentials(Path path, String serviceName) throws IOException {
+        final Map<String, Object> credentials = new LinkedHashMap<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+                for (Path file : files) {
+                    final String name = file.getFileName().toString();
+                    if (!name.startsWith(".") && Files.isRegularFile(file)) {
+                        credentials.put(name, new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+                    }
+                }
+            }
+        } else {
+            final VcapService service = VcapServicesSnapshot.parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), new JsonFactory())
+                    .getServiceByName(serviceName);
+            if (service != null) {
+                credentials.putAll(service.getCredentials());
+            }
+        }
+        return credentials;
+    }
+
+    /**
+     * Push new credentials into a connection pool
+     *
+     * @return <code>true</code> if the connections opened with the previous credentials are closed as they are returned
+     * @throws ReflectiveOperationException In case the datasource has no setter for the credentials
+     */
+    static boolean rotate(Object dataSource, String previousUserName, String previousPassword, String userName, String password) throws ReflectiveOperationException {
+        final Object url = invoke(dataSource, "getUrl");
+        if (url instanceof String) {
+            invoke(dataSource, "setUrl", withCredentials((String) url, previousUserName, previousPassword, userName, password));
+        }
+        invoke(dataSource, "setUsername", userName);
+        invoke(dataSource, "setPassword", password);
+
+        // tomcat-jdbc closes the connections opened with the previous credentials when they are returned, commons-dbcp2 2.7+ recreates its pool
+        for (String purge : new String[] { "purgeOnReturn", "restart" }) {
+            final Method method = findMethod(dataSource, purge);
+            if (method != null) {
+                method.invoke(dataSource);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private WatchService getWatchService() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            final Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    processEvents();
+                }
+            }, "resource-credential-rotation");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return watchService;
+    }
+
+    private void processEvents() {
+        while (true) {
+            final WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            // The files of a mounted binding are swapped through symbolic links, so any change of the directory triggers a check
+            key.pollEvents();
+            key.reset();
+
+            final List<WatchedResource> resources;
+            synchronized (monitor) {
+                final List<WatchedResource> directoryResources = watchedResources.get((Path) key.watchable());
+                resources = directoryResources == null ? new ArrayList<WatchedResource>() : new ArrayList<>(directoryResources);
+            }
+            for (WatchedResource resource : resources) {
+                resource.check();
+            }
+        }
+    }
+
+    private static Object invoke(Object target, String name, String... arguments) throws ReflectiveOperationException {
+        final Class<?>[] parameterTypes = new Class<?>[arguments.length];
+        for (int i = 0; i < arguments.length; i++) {
+            parameterTypes[i] = String.class;
+        }
+        return target.getClass().getMethod(name, parameterTypes).invoke(target, (Object[]) arguments);
+    }
+
+    private static Method findMethod(Object target, String name) {
+        try {
+            return target.getClass().getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static String getCredential(Map<String, Object> credentials, String... keys) {
+        for (String key : keys) {
+            final Object value = credentials.get(key);
+            if (value != null) {
+                return value.toString();
+            }
+        }
+        return null;
+    }
+
+    private static final class WatchedResource {
+
+        private final String resourceId;
+
+        private final Path path;
+
+        private final String serviceName;
+
+        private final Callable<Object> dataSource;
+
+        private String userName;
+
+        private String password;
+
+        private WatchedResource(String resourceId, Path path, String serviceName, String userName, String password, Callable<Object> dataSource) {
+            this.resourceId = resourceId;
+            this.path = path;
+            this.serviceName = serviceName;
+            this.userName = userName;
+            this.password = password;
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * Rotate the credentials of the pool if the credentials file changed them. A file being rewritten may be incomplete, so a rotation that fails is retried on the next change.
+         */
+        private synchronized void check() {
+            final Map<String, Object> credentials;
+            try {
+                credentials = readCredentials(path, serviceName);
+            } catch (IOException | ConfigurationException e) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Cannot read the credentials of " + resourceId + " from " + path, e);
+                }
+                return;
+            }
+
+            String newUserName = getCredential(credentials, USER_NAME_CREDENTIALS);
+            String newPassword = getCredential(credentials, PASSWORD_CREDENTIAL);
+            if ((newUserName == null || newPassword == null) && !credentials.isEmpty()) {
+                final ServiceInfo serviceInfo = NativeServiceBinding.createServiceInfo(new VcapService(null, toServiceEntry(credentials)));
+                if (serviceInfo instanceof RelationalServiceInfo) {
+                    newUserName = ((RelationalServiceInfo) serviceInfo).getUserName();
+                    newPassword = ((RelationalServiceInfo) serviceInfo).getPassword();
+                }
+            }
+            if (newUserName == null || newPassword == null || (newUserName.equals(userName) && newPassword.equals(password))) {
+                return;
+            }
+
+            try {
+                final Object pool = dataSource.call();
+                if (pool == null) {
+                    logger.warning("Cannot rotate the credentials of " + resourceId + ": its datasource is not bound");
+                    return;
+                }
+                if (rotate(pool, userName, password, newUserName, newPassword)) {
+                    logger.info("Rotated the credentials of " + resourceId + ", connections opened with the previous credentials are closed when returned");
+                } else {
+                    logger.warning("Rotated the credentials of " + resourceId + ", they apply once " + pool.getClass().getName() + " is restarted");
+                }
+                userName = newUserName;
+                password = newPassword;
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Cannot rotate the credentials of " + resourceId, e);
+            }
+        }
+
+        private Map<String, Object> toServiceEntry(Map<String, Object> credentials) {
+            final Map<String, Object> serviceEntry = new HashMap<>();
+            serviceEntry.put("name", serviceName);
+            serviceEntry.put("credentials", credentials);
+            return serviceEntry;
+        }
+    }
+}
@@ -17,12 +17,17 @@
 package org.cloudfoundry.reconfiguration.tomee;
 
 import org.apache.openejb.api.resource.PropertiesResourceProvider;
+import org.cloudfoundry.reconfiguration.tomee.provider.ConnectionBudget;
+import org.cloudfoundry.reconfiguration.tomee.provider.MessageBrokerPropertiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.provider.RedisPropertiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.provider.RelationalServicePropertiesProvider;
 import org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider;
-import org.springframework.cloud.Cloud;
-import org.springframework.cloud.CloudFactory;
 import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.service.common.RelationalServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
 
-import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.ServiceLoader;
 import java.util.logging.Level;
@@ -30,21 +35,30 @@ import java.util.logging.Logger;
 
 /**
  * {@link PropertiesResourceProvider} implementation that delegates the resource configuration to a suitable {@link PropertiesProvider} implementation. The <code>PropertiesProvider</code>
- * implementations are discovered through the {@link java.util.ServiceLoader} mechanism.
+ * implementations are discovered through the {@link java.util.ServiceLoader} mechanism once per class loader and dispatched to by JDBC URL scheme.
  *
  * @see ServiceLoader
  * @see PropertiesProvider
+ * @see org.cloudfoundry.reconfiguration.tomee.spi.SchemeAwarePropertiesProvider
  * @see PropertiesResourceProvider
  */
 public final class DelegatingPropertiesProvider implements PropertiesResourceProvider {
 
     static final String PREFIX_JDBC = "jdbc/";
 
+    static final String PREFIX_JMS = "jms/";
+
+    static final String PREFIX_REDIS = "redis/";
+
+    private static final String PROPERTY_JDBC_URL = "JdbcUrl";
+
     private static final Logger logger = Logger.getLogger(DelegatingPropertiesProvider.class.getName());
 
     private static final Object monitor = new Object();
 
-    private static volatile Cloud cloud;
+    private static volatile ServiceInfoIndex serviceInfoIndex;
+
+    private static volatile ResolutionPlan resolutionPlan;
 
     /**
      * The default configuration of the service provider with merged overrides. Set by OpenEJB <p> NOTE: The field name must be "properties" because that's the name expected by OpenEJB </p>
@@ -72,9 +86,34 @@ public final class DelegatingPropertiesProvider implements PropertiesResourcePro
             throw new ConfigurationException("The serviceId is null.");
         }
 
-        final ServiceInfo serviceInfo = getBoundService();
-        final PropertiesProvider propertiesProvider = getPropertiesProvider(serviceInfo);
-        return propertiesProvider.provide(serviceInfo, properties);
+        final long start = System.nanoTime();
+        ResolutionEvents.enter(serviceId);
+        try {
+            final Properties plannedConfiguration = applyResolutionPlan(start);
+            if (null != plannedConfiguration) {
+                return plannedConfiguration;
+            }
+
+            final ServiceInfo serviceInfo = getBoundService();
+            final PropertiesProvider propertiesProvider = getPropertiesProvider(serviceInfo);
+            checkServicePrefix(serviceId, propertiesProvider.getClass());
+            final Properties configuration;
+            final List<ConnectionBudget.Claim> claims;
+            final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.PROPERTY_CONSTRUCTION);
+            final ConnectionBudget.Deferral deferral = ConnectionBudget.getInstance().defer();
+            try {
+                span.setPropertiesProvider(propertiesProvider.getClass());
+                configuration = propertiesProvider.provide(serviceInfo, properties);
+            } finally {
+                claims = deferral.end();
+                span.end();
+            }
+            ConnectionBudget.getInstance().claim(serviceId, claims, configuration);
+
+            return configured(propertiesProvider.getClass().getName(), configuration, start);
+        } finally {
+            ResolutionEvents.exit();
+        }
     }
 
     public void setProperties(Properties properties) {
@@ -85,79 +124,212 @@ public final class DelegatingPropertiesProvider implements PropertiesResourcePro
         this.serviceId = serviceId;
     }
 
-    private static Cloud getCloudInstance() {
-        if (null == cloud) {
-            synchronized (monitor) {
-                if (null == cloud) {
-                    cloud = new CloudFactory().getCloud();
-                }
-            }
+    /**
+     * Resolve in one pass the configuration of every bound service a {@link PropertiesProvider} can handle. This happens on the first <code>provides()</code> call at the latest; calling it
+     * earlier moves the work out of the deployment of the first resource, but the plan is then computed against an empty default configuration, so resources with non-empty
+     * defaults for the entries the providers look up are resolved on demand. When a {@link StagedResolution} matching the current environment is configured, its plan is used
+     * instead.
+     *
+     * @see ResolutionPlan
+     * @see StagedResolution
+     */
+    public static void prepare() {
+        getResolutionPlan(new Properties());
+    }
+
+    /**
+     * Forget the bound services and the resolution plan, so they are resolved again on the next <code>provides()</code> call
+     */
+    static void reset() {
+        synchronized (monitor) {
+            serviceInfoIndex = null;
+            resolutionPlan = null;
         }
-        return cloud;
     }
 
-    private String extractCloudFoundryServiceId() {
-        String cfServiceId = removeContextRootFromServiceId();
-        cfServiceId = removeServicePrefix(cfServiceId);
+    private Properties applyResolutionPlan(long start) {
+        final ResolutionPlan plan = getResolutionPlan(null == properties ? new Properties() : properties);
+        final ResolutionPlan.Entry entry = plan.getEntries().get(ServiceInfoIndex.toCloudFoundryServiceId(serviceId));
+        if (null == entry) {
+            plan.reportFailure(serviceId);
+            return null;
+        }
+        checkServicePrefix(serviceId, entry.getPropertiesProvider());
 
-        if (logger.isLoggable(Level.FINE)) {
-            logger.fine("Extracted serviceId \"" + cfServiceId + "\" from " + "+\"" + serviceId + "\"");
+        final Properties configuration;
+        final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.PROPERTY_CONSTRUCTION);
+        try {
+            span.setPropertiesProvider(entry.getPropertiesProvider());
+            configuration = plan.apply(serviceId, properties);
+        } finally {
+            span.end();
         }
 
-        return cfServiceId;
+        return null == configuration ? null : configured(entry.getPropertiesProvider(), configuration, start);
     }
 
-    private ServiceInfo getBoundService() {
-        final Collection<ServiceInfo> serviceInfos = getCloudInstance().getServiceInfos();
-        final String cfServiceId = extractCloudFoundryServiceId();
+    /**
+     * Schedule the warm-up of a relational resource, watch its credentials and record its configuration
+     */
+    private Properties configured(String propertiesProvider, Properties configuration, long start) {
+        if (null != configuration.getProperty(PROPERTY_JDBC_URL)) {
+            final VcapService service = getVcapService();
+            ConnectionWarmUp.getInstance().schedule(serviceId, configuration, service);
+            final String serviceName = null == service ? ServiceInfoIndex.toCloudFoundryServiceId(serviceId) : service.getName();
+            CredentialRotation.getInstance().watch(serviceId, configuration, serviceName, service);
+        }
+        ConfiguredResources.record(serviceId, propertiesProvider, configuration, System.nanoTime() - start);
+        return configuration;
+    }
+
+    /**
+     * Check that the prefix of a resource matches the kind of resource the built-in provider configures, e.g. that a <code>jdbc/</code> resource is not bound to a Redis
+     * service. Resources without a prefix and other providers are not checked.
+     *
+     * @throws ConfigurationException If the prefix of the resource does not match the provider
+     */
+    static void checkServicePrefix(String resourceId, Class<?> propertiesProvider) {
+        final String servicePrefix = ServiceInfoIndex.getServicePrefix(resourceId);
+        final String providerPrefix = getServicePrefix(propertiesProvider);
+        if (null != servicePrefix && null != providerPrefix && !servicePrefix.equals(providerPrefix)) {
+            throw new ConfigurationException("Cannot configure " + resourceId + " with " + propertiesProvider.getName() + ": the service is bound to " + providerPrefix
+                    + " resources, not to " + servicePrefix + " resources");
+        }
+    }
 
-        for (ServiceInfo serviceInfo : serviceInfos) {
-            if (cfServiceId.equals(serviceInfo.getId())) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("Found matching ServiceInfo for serviceId " + cfServiceId + ": " + serviceInfo);
+    private static void checkServicePrefix(String resourceId, String propertiesProvider) {
+        try {
+            checkServicePrefix(resourceId, Class.forName(propertiesProvider, false, DelegatingPropertiesProvider.class.getClassLoader()));
+        } catch (ClassNotFoundException e) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Not checking the prefix of " + resourceId + " against " + propertiesProvider + ": " + e);
+            }
+        }
+    }
+
+    private static String getServicePrefix(Class<?> propertiesProvider) {
+        if (RelationalServicePropertiesProvider.class.isAssignableFrom(propertiesProvider)) {
+            return PREFIX_JDBC;
+        }
+        if (MessageBrokerPropertiesProvider.class.isAssignableFrom(propertiesProvider)) {
+            return PREFIX_JMS;
+        }
+        if (RedisPropertiesProvider.class.isAssignableFrom(propertiesProvider)) {
+            return PREFIX_REDIS;
+        }
+        return null;
+    }
+
+    /**
+     * @param defaultConfiguration The default configuration the plan is computed against if it is not resolved yet, left unchanged
+     */
+    private static ResolutionPlan getResolutionPlan(Properties defaultConfiguration) {
+        if (null == resolutionPlan) {
+            synchronized (monitor) {
+                if (null == resolutionPlan) {
+                    final StagedResolution stagedResolution = StagedResolution.getInstance(new EnvironmentAccessor());
+                    if (null != stagedResolution) {
+                        resolutionPlan = stagedResolution.getResolutionPlan();
+                    } else {
+                        resolutionPlan = ResolutionPlan.build(getServiceInfoIndex(), PropertiesProviderRegistry.getInstance(), defaultConfiguration,
+                                Collections.<String>emptySet());
+                    }
                 }
-                return serviceInfo;
             }
         }
-        throw new ConfigurationException("Cannot find ServiceInfo for serviceId: " + cfServiceId);
+        return resolutionPlan;
     }
 
-    private PropertiesProvider getPropertiesProvider(ServiceInfo serviceInfo) {
-        final ServiceLoader<PropertiesProvider> serviceLoader = ServiceLoader.load(PropertiesProvider.class);
-        for (PropertiesProvider propertiesProvider : serviceLoader) {
-            if (propertiesProvider.canProvide(serviceInfo)) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("Found suitable PropertiesProvider for serviceId " + serviceId + ": " + propertiesProvider.getClass());
+    private static ServiceInfoIndex getServiceInfoIndex() {
+        if (null == serviceInfoIndex) {
+            synchronized (monitor) {
+                if (null == serviceInfoIndex) {
+                    final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.CLOUD_CREATION);
+                    try {
+                        serviceInfoIndex = ServiceInfoIndex.bind(new EnvironmentAccessor());
+                    } finally {
+                        span.end();
+                    }
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("Indexed " + serviceInfoIndex.size() + " bound services");
+                    }
                 }
-                return propertiesProvider;
             }
         }
+        return serviceInfoIndex;
+    }
 
-        throw new ConfigurationException("Cannot find suitable PropertiesProvider for serviceId " + serviceId + ": " + serviceInfo);
+    private VcapService getVcapService() {
+        final VcapServicesSnapshot snapshot = VcapServicesSnapshot.getInstance();
+        final String cfServiceId = ServiceInfoIndex.toCloudFoundryServiceId(serviceId);
+        final VcapService service = snapshot.getServiceByName(cfServiceId);
+        final String primaryServiceId = ServiceInfoIndex.toPrimaryServiceId(cfServiceId);
+        return null == service && null != primaryServiceId ? snapshot.getServiceByName(primaryServiceId) : service;
     }
 
-    private String removeContextRootFromServiceId() {
-        String cfServiceId = serviceId;
-        int index = cfServiceId.indexOf('/');
-        if (index != -1) {
-            cfServiceId = serviceId.substring(index + 1);
+    private ServiceInfo getBoundService() {
+        final ServiceInfoIndex index = getServiceInfoIndex();
+        ServiceInfo serviceInfo;
+        final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.SERVICE_LOOKUP);
+        try {
+            serviceInfo = index.find(serviceId);
+            if (null == serviceInfo) {
+                serviceInfo = getReadOnlyService(index);
+            }
+        } finally {
+            span.end();
+        }
+        if (null == serviceInfo) {
+            throw new ConfigurationException("Cannot find ServiceInfo for serviceId: " + ServiceInfoIndex.toCloudFoundryServiceId(serviceId));
         }
 
-        return cfServiceId;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Found matching ServiceInfo for serviceId " + serviceId + ": " + serviceInfo);
+        }
+        return serviceInfo;
     }
 
     /**
-     * Strip the prefix (jdbc/, jmx/, mail/, etc) from the serviceId <p> For now strip only the jdbc prefix, but here should come the code to strip other prefixes when support for other services is
-     * implemented.
+     * Resolve a resource id such as <code>jdbc/my-db-ro</code>, which does not match a bound service, to the relational service <code>my-db</code> with the
+     * <code>read-only</code> setting
+     *
+     * @return The relational service or <code>null</code> if the resource is not a read-only resource
      */
-    private String removeServicePrefix(String cfServiceId) {
-        String serviceIdWithoutPrefix = cfServiceId;
+    private ServiceInfo getReadOnlyService(ServiceInfoIndex index) {
+        final String primaryServiceId = ServiceInfoIndex.toPrimaryServiceId(ServiceInfoIndex.toCloudFoundryServiceId(serviceId));
+        final ServiceInfo serviceInfo = null == primaryServiceId ? null : index.get(primaryServiceId);
+        if (!(serviceInfo instanceof RelationalServiceInfo)) {
+            return null;
+        }
+
+        if (null == properties.getProperty(RelationalServicePropertiesProvider.SETTING_READ_ONLY)) {
+            properties.setProperty(RelationalServicePropertiesProvider.SETTING_READ_ONLY, Boolean.TRUE.toString());
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Configuring " + serviceId + " as the read-only resource of " + primaryServiceId);
+        }
+        return serviceInfo;
+    }
 
-        if (serviceIdWithoutPrefix.startsWith(PREFIX_JDBC)) {
-            serviceIdWithoutPrefix = serviceIdWithoutPrefix.substring(PREFIX_JDBC.length());
+    private PropertiesProvider getPropertiesProvider(ServiceInfo serviceInfo) {
+        final PropertiesProvider propertiesProvider;
+        final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.PROVIDER_SELECTION);
+        try {
+            propertiesProvider = PropertiesProviderRegistry.getInstance().find(serviceInfo);
+            if (null != propertiesProvider) {
+                span.setPropertiesProvider(propertiesProvider.getClass());
+            }
+        } finally {
+            span.end();
+        }
+        if (null == propertiesProvider) {
+            throw new ConfigurationException("Cannot find suitable PropertiesProvider for serviceId " + serviceId + ": " + serviceInfo);
         }
 
-        return serviceIdWithoutPrefix;
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Found suitable PropertiesProvider for serviceId " + serviceId + ": " + propertiesProvider.getClass());
+        }
+        return propertiesProvider;
     }
 
 }
@@ -17,29 +17,40 @@
 package org.cloudfoundry.reconfiguration.tomee;
 
 import org.apache.openejb.api.resource.PropertiesResourceProvider;
-import org.springframework.cloud.cloudfoundry.CloudFoundryRawServiceData;
 import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.cloud.util.EnvironmentAccessor;
 
-import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 /**
  * Created by tomcollings on 1/21/18.
+ *
+ * Resolves services through the shared {@link VcapServicesSnapshot}, so <code>VCAP_SERVICES</code> is parsed once per process instead of once per resource.
  */
 public class GenericServicePropertiesProvider implements PropertiesResourceProvider {
 
+    /**
+     * System property enabling the streaming mode, which reads only the credentials of the requested service instead of parsing the whole <code>VCAP_SERVICES</code> tree
+     */
+    static final String STREAMING_PROPERTY = "org.cloudfoundry.reconfiguration.tomee.generic.streaming";
+
     private final ObjectMapper objectMapper;
     private final EnvironmentAccessor environment;
+    private final boolean streaming;
 
     public GenericServicePropertiesProvider() {
         this (new EnvironmentAccessor(), new ObjectMapper());
     }
 
     protected GenericServicePropertiesProvider(EnvironmentAccessor environment, ObjectMapper objectMapper) {
+        this (environment, objectMapper, Boolean.getBoolean(STREAMING_PROPERTY));
+    }
+
+    protected GenericServicePropertiesProvider(EnvironmentAccessor environment, ObjectMapper objectMapper, boolean streaming) {
         this.objectMapper = objectMapper;
         this.environment = environment;
+        this.streaming = streaming;
     }
 
     /**
@@ -59,10 +70,15 @@ public class GenericServicePropertiesProvider implements PropertiesResourceProvi
 
     @Override
     public Properties provides() {
-        CloudFoundryRawServiceData rawServiceData = getRawData();
-        Map<String, String> genericServiceCredentials = getGenericServiceCredentials(rawServiceData);
-        convertToProperties(genericServiceCredentials);
-        return properties;
+        long start = System.nanoTime();
+        ResolutionEvents.enter(serviceId);
+        try {
+            Properties configuration = resolve();
+            ConfiguredResources.record(serviceId, getClass().getName(), configuration, System.nanoTime() - start);
+            return configuration;
+        } finally {
+            ResolutionEvents.exit();
+        }
     }
 
     public void setProperties(Properties properties) {
@@ -73,42 +89,56 @@ public class GenericServicePropertiesProvider implements PropertiesResourceProvi
         this.serviceId = serviceId;
     }
 
-    private CloudFoundryRawServiceData getRawData() {
-        String servicesString = environment.getEnvValue("VCAP_SERVICES");
-        CloudFoundryRawServiceData rawServices = new CloudFoundryRawServiceData();
-
-        if (servicesString != null && servicesString.length() > 0) {
-            try {
-                rawServices = objectMapper.readValue(servicesString, CloudFoundryRawServiceData.class);
-            } catch (Exception e) {
-                throw new ConfigurationException(e);
+    private Properties resolve() {
+        StagedResolution stagedResolution = StagedResolution.getInstance(environment);
+        if (stagedResolution != null) {
+            Properties stagedCredentials = stagedResolution.getGenericCredentials(removeContextRootFromServiceId());
+            if (stagedCredentials != null) {
+                properties.putAll(stagedCredentials);
+                return properties;
             }
         }
 
-        return rawServices;
+        if (streaming) {
+            return providesStreaming();
+        }
+
+        VcapServicesSnapshot snapshot = VcapServicesSnapshot.getInstance(environment, objectMapper);
+        Map<String, Object> genericServiceCredentials = getGenericServiceCredentials(snapshot);
+        convertToProperties(genericServiceCredentials);
+        return properties;
     }
 
-    @SuppressWarnings("unchecked")
-    private Map<String, String> getGenericServiceCredentials(CloudFoundryRawServiceData rawServiceData) {
+    private Properties providesStreaming() {
+        String servicesString = environment.getEnvValue(VcapServicesSnapshot.VCAP_SERVICES);
+        VcapServicesStreamingReader reader = new VcapServicesStreamingReader(objectMapper.getFactory());
+        boolean found;
+        ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.VCAP_PARSE);
+        try {
+            span.setPropertiesProvider(getClass());
+            found = reader.readCredentials(servicesString, removeContextRootFromServiceId(), properties);
+        } finally {
+            span.end();
+        }
+        if (!found) {
+            throw new ConfigurationException("Could not find required service with id " + serviceId);
+        }
+        return properties;
+    }
 
+    private Map<String, Object> getGenericServiceCredentials(VcapServicesSnapshot snapshot) {
         String cfServiceId = removeContextRootFromServiceId();
-        for (Map.Entry<String, List<Map<String, Object>>> entry : rawServiceData.entrySet()) {
-            for (Map<String, Object> serviceEntry : entry.getValue()) {
-                if (serviceEntry.containsKey("credentials")) {
-                    Map<String, String> credentials = (Map<String, String>) serviceEntry.get("credentials");
-
-                    if (credentials.containsKey("id")) {
-                        String foundId = credentials.get("id");
-                        if (foundId.equalsIgnoreCase(cfServiceId)) {
-                            return credentials;
-                        }
-                    }
-                }
-            }
+        VcapService service;
+        ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.SERVICE_LOOKUP);
+        try {
+            service = snapshot.getServiceByCredentialsId(cfServiceId);
+        } finally {
+            span.end();
         }
-
-        throw new ConfigurationException("Could not find required service with id " + serviceId);
-
+        if (service == null) {
+            throw new ConfigurationException("Could not find required service with id " + serviceId);
+        }
+        return service.getCredentials();
     }
 
     private String removeContextRootFromServiceId() {
@@ -122,12 +152,16 @@ public class GenericServicePropertiesProvider implements PropertiesResourceProvi
         return cfServiceId;
     }
 
-    private void convertToProperties(Map<String, String> serviceCredentials) {
-
-        for (Map.Entry<String, String> entry : serviceCredentials.entrySet()) {
-            properties.setProperty(entry.getKey(), entry.getValue());
+    private void convertToProperties(Map<String, Object> serviceCredentials) {
+        ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.PROPERTY_CONSTRUCTION);
+        try {
+            span.setPropertiesProvider(getClass());
+            for (Map.Entry<String, Object> entry : serviceCredentials.entrySet()) {
+                properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+        } finally {
+            span.end();
         }
-
     }
 
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.service.BaseServiceInfo;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.service.common.DB2ServiceInfo;
+import org.springframework.cloud.service.common.MysqlServiceInfo;
+import org.springframework.cloud.service.common.OracleServiceInfo;
+import org.springframework.cloud.service.common.PostgresqlServiceInfo;
+import org.springframework.cloud.service.common.RelationalServiceInfo;
+import org.springframework.cloud.service.common.SqlServerServiceInfo;
+import org.springframework.cloud.util.UriInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binding of the services of <code>VCAP_SERVICES</code> to {@link ServiceInfo} instances without Spring Cloud Connectors, enabled when the system property
+ * {@value #NATIVE_BINDING_PROPERTY} is <code>true</code>. <p> <code>CloudFactory</code> discovers the cloud connectors and their service info creators reflectively on every
+ * deployment. This binding matches the relational services with the rules of the Cloud Foundry connector instead, against the {@link VcapServicesSnapshot} already parsed for the
+ * other settings. Other services are bound as a {@link BaseServiceInfo}, as the fallback creator of the connector does, so {@link org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider}
+ * implementations expecting another type of <code>ServiceInfo</code> require the connector. </p>
+ *
+ * @see ServiceInfoIndex
+ */
+final class NativeServiceBinding {
+
+    static final String NATIVE_BINDING_PROPERTY = "org.cloudfoundry.reconfiguration.tomee.native-binding";
+
+    private static final Logger logger = Logger.getLogger(NativeServiceBinding.class.getName());
+
+    private NativeServiceBinding() {
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(NATIVE_BINDING_PROPERTY));
+    }
+
+    /**
+     * @return The bound services, in the order of <code>VCAP_SERVICES</code>
+     */
+    static List<ServiceInfo> createServiceInfos(VcapServicesSnapshot snapshot) {
+        final List<ServiceInfo> serviceInfos = new ArrayList<>(snapshot.getServices().size());
+        for (VcapService service : snapshot.getServices()) {
+            if (service.getName() != null) {
+                serviceInfos.add(createServiceInfo(service));
+            }
+        }
+        return serviceInfos;
+    }
+
+    static ServiceInfo createServiceInfo(VcapService service) {
+        for (Vendor vendor : Vendor.values()) {
+            if (vendor.accept(service)) {
+                try {
+                    return vendor.createServiceInfo(service);
+                } catch (IllegalArgumentException e) {
+                    logger.log(Level.WARNING, "Cannot bind " + service + " as a " + vendor + " service", e);
+                    break;
+                }
+            }
+        }
+        return new BaseServiceInfo(service.getName());
+    }
+
+    /**
+     * The relational services of the Cloud Foundry connector, in the order its creators are tried. A service matches on a tag, a label starting with a tag, or a URI with the
+     * scheme of the vendor.
+     */
+    enum Vendor {
+
+        MYSQL(new String[] { "mysql" }, "mysql") {
+            @Override
+            RelationalServiceInfo createServiceInfo(String id, String uri, String jdbcUrl) {
+                return new MysqlServiceInfo(id, uri, jdbcUrl);
+            }
+        },
+
+        POSTGRESQL(new String[] { "postgresql" }, "postgres", "postgresql") {
+            @Override
+            RelationalServiceInfo createServiceInfo(String id, String uri, String jdbcUrl) {
+                return new PostgresqlServiceInfo(id, uri, jdbcUrl);
+            }
+        },
+
+        ORACLE(new String[] { "oracle" }, "oracle") {
+            @Override
+            RelationalServiceInfo createServiceInfo(String id, String uri, String jdbcUrl) {
+                return new OracleServiceInfo(id, uri, jdbcUrl);
+            }
+        },
+
+        DB2(new String[] { "sqldb", "dashDB", "db2" }, "db2") {
+            @Override
+            RelationalServiceInfo createServiceInfo(String id, String uri, String jdbcUrl) {
+                return new DB2ServiceInfo(id, uri, jdbcUrl);
+            }
+        },
+
+        SQLSERVER(new String[] { "sqlserver" }, "sqlserver") {
+            @Override
+            RelationalServiceInfo createServiceInfo(String id, String uri, String jdbcUrl) {
+                return new SqlServerServiceInfo(id, uri, jdbcUrl);
+            }
+        };
+
+        private final String[] tags;
+
+        private final String[] schemes;
+
+        Vendor(String[] tags, String... schemes) {
+            this.tags = tags;
+            this.schemes = schemes;
+        }
+
+        abstract RelationalServiceInfo createServiceInfo(String id, String uri, String jdbcUrl);
+
+        boolean accept(VcapService service) {
+            return hasTag(service) || hasLabel(service) || hasUri(service) || hasJdbcUrl(service);
+        }
+
+        RelationalServiceInfo createServiceInfo(VcapService service) {
+            String uri = getUri(service);
+            if (uri == null) {
+                final String host = getCredential(service, "hostname", "host");
+                final String name = service.getCredential("name");
+                if (host != null && name != null) {
+                    uri = new UriInfo(schemes[0], host, getPort(service), getCredential(service, "user", "username"), service.getCredential("password"), name).toString();
+                }
+            }
+            if (uri == null) {
+                throw new IllegalArgumentException("No connection URI in the credentials");
+            }
+            return createServiceInfo(service.getName(), uri, service.getCredential("jdbcUrl"));
+        }
+
+        private boolean hasTag(VcapService service) {
+            for (String tag : tags) {
+                if (service.hasTag(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean hasLabel(VcapService service) {
+            final String label = service.getLabel();
+            if (label != null) {
+                for (String tag : tags) {
+                    if (label.startsWith(tag)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean hasUri(VcapService service) {
+            final String uri = getUri(service);
+            if (uri != null) {
+                for (String scheme : schemes) {
+                    if (uri.startsWith(scheme + "://")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean hasJdbcUrl(VcapService service) {
+            final String jdbcUrl = service.getCredential("jdbcUrl");
+            if (jdbcUrl != null) {
+                for (String scheme : schemes) {
+                    if (jdbcUrl.startsWith("jdbc:" + scheme + ":")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The <code>uri</code> or <code>url</code> credential, or one prefixed with a scheme of the vendor such as <code>mysqlUri</code>
+         */
+        private String getUri(VcapService service) {
+            final Map<String, Object> credentials = service.getCredentials();
+            final List<String> keys = new ArrayList<>();
+            keys.add("uri");
+            keys.add("url");
+            for (String scheme : schemes) {
+                keys.add(scheme + "Uri");
+                keys.add(scheme + "uri");
+                keys.add(scheme + "Url");
+                keys.add(scheme + "url");
+            }
+            for (String key : keys) {
+                if (credentials.containsKey(key)) {
+                    return service.getCredential(key);
+                }
+            }
+            return null;
+        }
+
+        private static int getPort(VcapService service) {
+            final String port = service.getCredential("port");
+            try {
+                return port == null ? -1 : Integer.parseInt(port.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static String getCredential(VcapService service, String... keys) {
+            for (String key : keys) {
+                final String value = service.getCredential(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+}
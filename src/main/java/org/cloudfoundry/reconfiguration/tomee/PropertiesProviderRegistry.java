@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.spi.SchemeAwarePropertiesProvider;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.service.common.RelationalServiceInfo;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+/**
+ * Immutable registry of the {@link PropertiesProvider} implementations visible to a class loader. The providers are discovered through the {@link ServiceLoader} mechanism once per class
+ * loader and ordered by their priority. Services are dispatched by JDBC URL scheme to the {@link SchemeAwarePropertiesProvider} implementations first, the remaining providers are probed
+ * through {@link PropertiesProvider#canProvide(ServiceInfo)} as a fallback.
+ *
+ * @see PropertiesProvider
+ * @see SchemeAwarePropertiesProvider
+ */
+final class PropertiesProviderRegistry {
+
+    private static final Map<ClassLoader, SoftReference<PropertiesProviderRegistry>> registries = new WeakHashMap<>();
+
+    private static final Comparator<PropertiesProvider> PRIORITY_ORDER = new Comparator<PropertiesProvider>() {
+
+        @Override
+        public int compare(PropertiesProvider left, PropertiesProvider right) {
+            final int leftPriority = getPriority(left);
+            final int rightPriority = getPriority(right);
+            return leftPriority < rightPriority ? -1 : (leftPriority == rightPriority ? 0 : 1);
+        }
+    };
+
+    private final List<PropertiesProvider> propertiesProviders;
+
+    private final Map<String, List<PropertiesProvider>> propertiesProvidersByScheme;
+
+    private PropertiesProviderRegistry(List<PropertiesProvider> propertiesProviders, Map<String, List<PropertiesProvider>> propertiesProvidersByScheme) {
+        this.propertiesProviders = propertiesProviders;
+        this.propertiesProvidersByScheme = propertiesProvidersByScheme;
+    }
+
+    /**
+     * Get the registry of the providers visible to the context class loader of the current thread
+     */
+    static PropertiesProviderRegistry getInstance() {
+        return getInstance(Thread.currentThread().getContextClassLoader());
+    }
+
+    static PropertiesProviderRegistry getInstance(ClassLoader classLoader) {
+        synchronized (registries) {
+            final SoftReference<PropertiesProviderRegistry> reference = registries.get(classLoader);
+            PropertiesProviderRegistry registry = reference == null ? null : reference.get();
+            if (registry == null) {
+                registry = of(ServiceLoader.load(PropertiesProvider.class, classLoader));
+                registries.put(classLoader, new SoftReference<>(registry));
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Build a registry over the provided providers. Providers with the same priority keep their iteration order.
+     */
+    static PropertiesProviderRegistry of(Iterable<PropertiesProvider> providers) {
+        final List<PropertiesProvider> propertiesProviders = new ArrayList<>();
+        for (PropertiesProvider propertiesProvider : providers) {
+            propertiesProviders.add(propertiesProvider);
+        }
+        Collections.sort(propertiesProviders, PRIORITY_ORDER);
+
+        final Map<String, List<PropertiesProvider>> propertiesProvidersByScheme = new HashMap<>();
+        for (PropertiesProvider propertiesProvider : propertiesProviders) {
+            if (propertiesProvider instanceof SchemeAwarePropertiesProvider) {
+                for (String scheme : ((SchemeAwarePropertiesProvider) propertiesProvider).getSchemes()) {
+                    List<PropertiesProvider> schemeProviders = propertiesProvidersByScheme.get(scheme);
+                    if (schemeProviders == null) {
+                        schemeProviders = new ArrayList<>(1);
+                        propertiesProvidersByScheme.put(scheme, schemeProviders);
+                    }
+                    schemeProviders.add(propertiesProvider);
+                }
+            }
+        }
+
+        return new PropertiesProviderRegistry(Collections.unmodifiableList(propertiesProviders), Collections.unmodifiableMap(propertiesProvidersByScheme));
+    }
+
+    /**
+     * Find the provider which can configure the resource associated with the provided service.
+     *
+     * @return The provider with the lowest priority value which can configure the service or <code>null</code> if there is no such provider
+     */
+    PropertiesProvider find(ServiceInfo serviceInfo) {
+        final String scheme = getScheme(serviceInfo);
+        if (scheme != null) {
+            final List<PropertiesProvider> schemeProviders = propertiesProvidersByScheme.get(scheme);
+            if (schemeProviders != null) {
+                for (PropertiesProvider propertiesProvider : schemeProviders) {
+                    if (propertiesProvider.canProvide(serviceInfo)) {
+                        return propertiesProvider;
+                    }
+                }
+            }
+        }
+
+        for (PropertiesProvider propertiesProvider : propertiesProviders) {
+            if (propertiesProvider.canProvide(serviceInfo)) {
+                return propertiesProvider;
+            }
+        }
+        return null;
+    }
+
+    List<PropertiesProvider> getPropertiesProviders() {
+        return propertiesProviders;
+    }
+
+    /**
+     * Extract the scheme of the JDBC URL of a relational service, e.g. <code>jdbc:mysql:</code> for <code>jdbc:mysql://host:3306/db</code>
+     */
+    static String getScheme(ServiceInfo serviceInfo) {
+        if (serviceInfo instanceof RelationalServiceInfo) {
+            final String jdbcUrl = ((RelationalServiceInfo) serviceInfo).getJdbcUrl();
+            if (jdbcUrl != null) {
+                final int index = jdbcUrl.indexOf(':', jdbcUrl.indexOf(':') + 1);
+                if (index != -1) {
+                    return jdbcUrl.substring(0, index + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int getPriority(PropertiesProvider propertiesProvider) {
+        if (propertiesProvider instanceof SchemeAwarePropertiesProvider) {
+            return ((SchemeAwarePropertiesProvider) propertiesProvider).getPriority();
+        }
+        return SchemeAwarePropertiesProvider.DEFAULT_PRIORITY;
+    }
+}
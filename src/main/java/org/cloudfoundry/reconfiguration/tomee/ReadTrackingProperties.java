@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * {@link java.util.Properties} which record the keys that were looked up, with the value they had in the default configuration. A properties provider fed with an instance reveals
+ * which entries of the default configuration its result depends on.
+ */
+final class ReadTrackingProperties extends Properties {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Properties defaultConfiguration = new Properties();
+
+    private final Map<String, String> readValues = new LinkedHashMap<>();
+
+    ReadTrackingProperties() {
+    }
+
+    ReadTrackingProperties(Properties defaultConfiguration) {
+        this.defaultConfiguration.putAll(defaultConfiguration);
+        putAll(defaultConfiguration);
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        track(key);
+        return super.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        track(key);
+        return super.containsKey(key);
+    }
+
+    @Override
+    public String getProperty(String key) {
+        track(key);
+        return super.getProperty(key);
+    }
+
+    @Override
+    public String getProperty(String key, String defaultValue) {
+        track(key);
+        return super.getProperty(key, defaultValue);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        track(key);
+        return super.remove(key);
+    }
+
+    /**
+     * The keys of the default configuration looked up so far, with their value in the default configuration or <code>null</code> if they had none. Keys set by the provider
+     * before being looked up are not included.
+     */
+    synchronized Map<String, String> getReadValues() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(readValues));
+    }
+
+    private synchronized void track(Object key) {
+        if (key instanceof String && !readValues.containsKey(key) && (defaultConfiguration.containsKey(key) || !super.containsKey(key))) {
+            readValues.put((String) key, defaultConfiguration.getProperty((String) key));
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Java Flight Recorder events for the phases of the resolution of a resource. Each event carries the id of the resource being resolved and, when known, the class of the
+ * {@link org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider} involved. <p> The event types are defined at runtime through <code>jdk.jfr.EventFactory</code>, so the
+ * library still runs on JVMs without Flight Recorder. When Flight Recorder is missing, or no recording enables an event, {@link #begin(Phase)} returns a span doing nothing.
+ * </p>
+ */
+public final class ResolutionEvents {
+
+    /**
+     * Phase of the resolution of a resource, recorded as the event type <code>org.cloudfoundry.reconfiguration.tomee.&lt;phase&gt;</code>
+     */
+    public enum Phase {
+
+        CLOUD_CREATION("CloudCreation", "Cloud Creation"),
+
+        VCAP_PARSE("VcapParse", "VCAP_SERVICES Parse"),
+
+        SERVICE_LOOKUP("ServiceLookup", "Service Lookup"),
+
+        PROVIDER_SELECTION("ProviderSelection", "Provider Selection"),
+
+        DRIVER_PROBING("DriverProbing", "Driver Probing"),
+
+        PROPERTY_CONSTRUCTION("PropertyConstruction", "Property Construction");
+
+        private final String name;
+
+        private final String label;
+
+        Phase(String name, String label) {
+            this.name = name;
+            this.label = label;
+        }
+    }
+
+    private static final String EVENT_NAME_PREFIX = "org.cloudfoundry.reconfiguration.tomee.";
+
+    private static final String[] CATEGORY = new String[] { "Cloud Foundry", "TomEE Resource Configuration" };
+
+    private static final int FIELD_RESOURCE_ID = 0;
+
+    private static final int FIELD_PROPERTIES_PROVIDER = 1;
+
+    private static final Logger logger = Logger.getLogger(ResolutionEvents.class.getName());
+
+    private static final Span NOOP = new Span(null);
+
+    private static final ThreadLocal<String> currentResource = new ThreadLocal<>();
+
+    private static final FlightRecorder flightRecorder = FlightRecorder.detect();
+
+    private ResolutionEvents() {
+    }
+
+    /**
+     * Start recording a phase of the resolution of the resource of the current thread
+     *
+     * @return The span of the phase, which must be ended
+     */
+    public static Span begin(Phase phase) {
+        if (flightRecorder == null) {
+            return NOOP;
+        }
+        return flightRecorder.begin(phase, currentResource.get());
+    }
+
+    /**
+     * Start recording a phase of the resolution of a resource
+     *
+     * @return The span of the phase, which must be ended
+     */
+    public static Span begin(Phase phase, String resourceId) {
+        if (flightRecorder == null) {
+            return NOOP;
+        }
+        return flightRecorder.begin(phase, resourceId);
+    }
+
+    /**
+     * @return <code>true</code> if Flight Recorder events can be emitted by this JVM
+     */
+    public static boolean isAvailable() {
+        return flightRecorder != null;
+    }
+
+    /**
+     * Mark the resource resolved by the current thread, until {@link #exit()}
+     */
+    static void enter(String resourceId) {
+        if (flightRecorder != null) {
+            currentResource.set(resourceId);
+        }
+    }
+
+    static void exit() {
+        if (flightRecorder != null) {
+            currentResource.remove();
+        }
+    }
+
+    /**
+     * A phase being recorded
+     */
+    public static final class Span {
+
+        private final Object event;
+
+        private String propertiesProvider;
+
+        private Span(Object event) {
+            this.event = event;
+        }
+
+        /**
+         * @return <code>true</code> if the phase is recorded, <code>false</code> if its event is disabled
+         */
+        public boolean isRecording() {
+            return event != null;
+        }
+
+        public void setPropertiesProvider(Class<?> propertiesProvider) {
+            if (event != null && propertiesProvider != null) {
+                this.propertiesProvider = propertiesProvider.getName();
+            }
+        }
+
+        public void setPropertiesProvider(String propertiesProvider) {
+            if (event != null) {
+                this.propertiesProvider = propertiesProvider;
+            }
+        }
+
+        /**
+         * End the phase and commit its event
+         */
+        public void end() {
+            if (event != null) {
+                flightRecorder.commit(event, propertiesProvider);
+            }
+        }
+    }
+
+    /**
+     * Reflective access to the Flight Recorder API, with one event type per phase
+     */
+    private static final class FlightRecorder {
+
+        private final Object[] eventFactories;
+
+        private final Method isEnabled;
+
+        private final Method getEventType;
+
+        private final Method newEvent;
+
+        private final Method eventBegin;
+
+        private final Method eventEnd;
+
+        private final Method eventShouldCommit;
+
+        private final Method eventSet;
+
+        private final Method eventCommit;
+
+        private FlightRecorder(ClassLoader classLoader) throws Exception {
+            final Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory", false, classLoader);
+            final Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType", false, classLoader);
+            final Class<?> eventClass = Class.forName("jdk.jfr.Event", false, classLoader);
+            final Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement", false, classLoader);
+            final Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor", false, classLoader);
+            final Constructor<?> annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            final Constructor<?> valueDescriptor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+            final Method create = eventFactoryClass.getMethod("create", List.class, List.class);
+
+            final Class<? extends Annotation> nameAnnotation = Class.forName("jdk.jfr.Name", false, classLoader).asSubclass(Annotation.class);
+            final Class<? extends Annotation> labelAnnotation = Class.forName("jdk.jfr.Label", false, classLoader).asSubclass(Annotation.class);
+            final Class<? extends Annotation> categoryAnnotation = Class.forName("jdk.jfr.Category", false, classLoader).asSubclass(Annotation.class);
+            final Class<? extends Annotation> stackTraceAnnotation = Class.forName("jdk.jfr.StackTrace", false, classLoader).asSubclass(Annotation.class);
+
+            final List<Object> fields = Arrays.<Object>asList(
+                    valueDescriptor.newInstance(String.class, "resourceId", Collections.singletonList(annotationElement.newInstance(labelAnnotation, "Resource Id"))),
+                    valueDescriptor.newInstance(String.class, "propertiesProvider", Collections.singletonList(annotationElement.newInstance(labelAnnotation, "Properties Provider"))));
+
+            final Phase[] phases = Phase.values();
+            eventFactories = new Object[phases.length];
+            for (Phase phase : phases) {
+                final List<Object> annotations = Arrays.asList(
+                        annotationElement.newInstance(nameAnnotation, EVENT_NAME_PREFIX + phase.name),
+                        annotationElement.newInstance(labelAnnotation, phase.label),
+                        annotationElement.newInstance(categoryAnnotation, CATEGORY),
+                        annotationElement.newInstance(stackTraceAnnotation, Boolean.FALSE));
+                eventFactories[phase.ordinal()] = create.invoke(null, annotations, fields);
+            }
+
+            getEventType = eventFactoryClass.getMethod("getEventType");
+            isEnabled = eventTypeClass.getMethod("isEnabled");
+            newEvent = eventFactoryClass.getMethod("newEvent");
+            eventBegin = eventClass.getMethod("begin");
+            eventEnd = eventClass.getMethod("end");
+            eventShouldCommit = eventClass.getMethod("shouldCommit");
+            eventSet = eventClass.getMethod("set", int.class, Object.class);
+            eventCommit = eventClass.getMethod("commit");
+        }
+
+        /**
+         * @return The Flight Recorder API or <code>null</code> if this JVM does not provide it
+         */
+        static FlightRecorder detect() {
+            try {
+                return new FlightRecorder(ResolutionEvents.class.getClassLoader());
+            } catch (Throwable e) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Flight Recorder events are not available", e);
+                }
+                return null;
+            }
+        }
+
+        Span begin(Phase phase, String resourceId) {
+            try {
+                final Object eventFactory = eventFactories[phase.ordinal()];
+                if (!(Boolean) isEnabled.invoke(getEventType.invoke(eventFactory))) {
+                    return NOOP;
+                }
+
+                final Object event = newEvent.invoke(eventFactory);
+                eventSet.invoke(event, FIELD_RESOURCE_ID, resourceId);
+                eventBegin.invoke(event);
+                return new Span(event);
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Cannot begin Flight Recorder event", e);
+                return NOOP;
+            }
+        }
+
+        void commit(Object event, String propertiesProvider) {
+            try {
+                eventEnd.invoke(event);
+                if ((Boolean) eventShouldCommit.invoke(event)) {
+                    eventSet.invoke(event, FIELD_PROPERTIES_PROVIDER, propertiesProvider);
+                    eventCommit.invoke(event);
+                }
+            } catch (Exception e) {
+                logger.log(Level.FINE, "Cannot commit Flight Recorder event", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.cloudfoundry.reconfiguration.tomee.provider.ConnectionBudget;
+import org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider;
+import org.springframework.cloud.service.ServiceInfo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plan of the configuration of all bound services. The plan resolves in one pass every bound service which a registered {@link PropertiesProvider} can handle and keeps the
+ * resulting configuration as a template per service. Configuring a resource then only copies the template over the default configuration provided by TomEE.
+ * <p> The templates are computed against a default configuration, usually the one TomEE provides for the first resource. A template only holds the entries the provider set or
+ * looked up, and is only used when the default configuration of the resource has the same value as at planning time for every key the provider looked up, otherwise the resource
+ * has to be resolved by the provider itself. Each template is handed out for a single resource: further resources pointing at the same service are resolved by the provider
+ * too. </p>
+ * <p> Building the plan has no side effect: the connections requested by the providers are recorded with the template and claimed from the {@link ConnectionBudget} when
+ * the template is applied to a resource. </p>
+ *
+ * @see DelegatingPropertiesProvider
+ */
+final class ResolutionPlan {
+
+    private static final Logger logger = Logger.getLogger(ResolutionPlan.class.getName());
+
+    private final Map<String, Entry> entries;
+
+    private final Map<String, RuntimeException> failures;
+
+    private final Set<String> appliedServiceIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private ResolutionPlan(Map<String, Entry> entries, Map<String, RuntimeException> failures) {
+        this.entries = Collections.unmodifiableMap(entries);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    static ResolutionPlan of(Map<String, Entry> entries) {
+        return new ResolutionPlan(new HashMap<>(entries), Collections.<String, RuntimeException>emptyMap());
+    }
+
+    static ResolutionPlan build(ServiceInfoIndex serviceInfoIndex, PropertiesProviderRegistry registry) {
+        return build(serviceInfoIndex, registry, new Properties(), Collections.<String>emptySet());
+    }
+
+    /**
+     * @param defaultConfiguration The default configuration the templates are computed against, left unchanged
+     * @param requiredServiceIds   Ids of the services which fail the plan if a provider cannot plan them, the others are left to resolution on demand
+     * @throws ConfigurationException In case a required service cannot be planned
+     */
+    static ResolutionPlan build(ServiceInfoIndex serviceInfoIndex, PropertiesProviderRegistry registry, Properties defaultConfiguration, Set<String> requiredServiceIds) {
+        final Map<String, Entry> entries = new HashMap<>(serviceInfoIndex.size() * 2);
+        final Map<String, RuntimeException> failures = new HashMap<>();
+        for (ServiceInfo serviceInfo : serviceInfoIndex.getServiceInfos()) {
+            final PropertiesProvider propertiesProvider;
+            final ResolutionEvents.Span selection = ResolutionEvents.begin(ResolutionEvents.Phase.PROVIDER_SELECTION, serviceInfo.getId());
+            try {
+                propertiesProvider = registry.find(serviceInfo);
+                if (propertiesProvider != null) {
+                    selection.setPropertiesProvider(propertiesProvider.getClass());
+                }
+            } finally {
+                selection.end();
+            }
+            if (propertiesProvider == null) {
+                continue;
+            }
+
+            final ResolutionEvents.Span construction = ResolutionEvents.begin(ResolutionEvents.Phase.PROPERTY_CONSTRUCTION, serviceInfo.getId());
+            construction.setPropertiesProvider(propertiesProvider.getClass());
+            try {
+                final ReadTrackingProperties trackingConfiguration = new ReadTrackingProperties(defaultConfiguration);
+                final Properties configuration;
+                final List<ConnectionBudget.Claim> claims;
+                final ConnectionBudget.Deferral deferral = ConnectionBudget.getInstance().defer();
+                try {
+                    configuration = propertiesProvider.provide(serviceInfo, trackingConfiguration);
+                } finally {
+                    claims = deferral.end();
+                }
+                final Map<String, String> readValues = trackingConfiguration.getReadValues();
+                final Properties template = new Properties();
+                for (Map.Entry<Object, Object> property : configuration.entrySet()) {
+                    if (readValues.containsKey(property.getKey()) || !property.getValue().equals(defaultConfiguration.get(property.getKey()))) {
+                        template.put(property.getKey(), property.getValue());
+                    }
+                }
+                entries.put(serviceInfo.getId(), new Entry(propertiesProvider.getClass().getName(), template, readValues, claims));
+            } catch (RuntimeException e) {
+                if (requiredServiceIds.contains(serviceInfo.getId())) {
+                    throw new ConfigurationException("Cannot plan the configuration of " + serviceInfo.getId(), e);
+                }
+                failures.put(serviceInfo.getId(), e);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.log(Level.FINE, "Cannot plan the configuration of " + serviceInfo.getId() + ", it will be resolved on demand", e);
+                }
+            } finally {
+                construction.end();
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Planned the configuration of " + entries.size() + " of " + serviceInfoIndex.size() + " bound services");
+        }
+        return new ResolutionPlan(entries, failures);
+    }
+
+    /**
+     * Configure a resource from its planned template
+     *
+     * @param resourceId           TomEE resource id
+     * @param defaultConfiguration Default configuration provided by TomEE, updated in place
+     * @return The configuration of the resource or <code>null</code> if the resource has to be resolved by its provider
+     */
+    Properties apply(String resourceId, Properties defaultConfiguration) {
+        final String cfServiceId = ServiceInfoIndex.toCloudFoundryServiceId(resourceId);
+        final Entry entry = entries.get(cfServiceId);
+        if (entry == null || defaultConfiguration == null) {
+            return null;
+        }
+
+        for (Map.Entry<String, String> readValue : entry.readValues.entrySet()) {
+            if (!Objects.equals(readValue.getValue(), defaultConfiguration.getProperty(readValue.getKey()))) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Resource " + resourceId + " has another " + readValue.getKey() + " than the plan, resolving it with " + entry.propertiesProvider);
+                }
+                return null;
+            }
+        }
+
+        if (!appliedServiceIds.add(cfServiceId)) {
+            return null;
+        }
+
+        for (Map.Entry<String, String> readValue : entry.readValues.entrySet()) {
+            if (readValue.getValue() != null && !entry.template.containsKey(readValue.getKey())) {
+                defaultConfiguration.remove(readValue.getKey());
+            }
+        }
+        defaultConfiguration.putAll(entry.template);
+        ConnectionBudget.getInstance().claim(resourceId, entry.claims, defaultConfiguration);
+        return defaultConfiguration;
+    }
+
+    /**
+     * Report why the service of a resource could not be planned, if it could not. Services no resource asks for are only reported at <code>FINE</code> level while the plan
+     * is built.
+     *
+     * @param resourceId TomEE resource id
+     */
+    void reportFailure(String resourceId) {
+        final String cfServiceId = ServiceInfoIndex.toCloudFoundryServiceId(resourceId);
+        final RuntimeException failure = failures.get(cfServiceId);
+        if (failure != null) {
+            logger.log(Level.WARNING, "Cannot plan the configuration of " + cfServiceId + ", resolving " + resourceId + " on demand", failure);
+        }
+    }
+
+    /**
+     * Ids of the services which could not be planned
+     */
+    Set<String> getFailedServiceIds() {
+        return failures.keySet();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    Map<String, Entry> getEntries() {
+        return entries;
+    }
+
+    static final class Entry {
+
+        private final String propertiesProvider;
+
+        private final Properties template;
+
+        private final Map<String, String> readValues;
+
+        private final List<ConnectionBudget.Claim> claims;
+
+        Entry(String propertiesProvider, Properties template, Map<String, String> readValues, List<ConnectionBudget.Claim> claims) {
+            this.propertiesProvider = propertiesProvider;
+            this.template = template;
+            this.readValues = readValues;
+            this.claims = claims;
+        }
+
+        /**
+         * Class name of the provider which computed the template
+         */
+        String getPropertiesProvider() {
+            return propertiesProvider;
+        }
+
+        Properties getTemplate() {
+            return template;
+        }
+
+        /**
+         * Keys of the default configuration the provider looked up, with their value at planning time or <code>null</code> if they had none
+         */
+        Map<String, String> getReadValues() {
+            return readValues;
+        }
+
+        /**
+         * Connections requested by the provider, claimed when the template is applied
+         */
+        List<ConnectionBudget.Claim> getClaims() {
+            return claims;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import java.util.Properties;
+
+/**
+ * Settings of a resource configured by this library. A setting is looked up, in order, in
+ * <ol>
+ * <li>the properties of the resource declared in <code>resources.xml</code>,</li>
+ * <li>the credentials of the bound service,</li>
+ * <li>the tags of the bound service, in the form <code>&lt;name&gt;=&lt;value&gt;</code>,</li>
+ * <li>the system property {@value #SYSTEM_PROPERTY_PREFIX}<code>&lt;name&gt;</code>.</li>
+ * </ol>
+ * Settings found in the resource properties are removed from them, so they are not passed on to the resource.
+ */
+public final class ResourceSettings {
+
+    /**
+     * Prefix of the system properties holding the global value of a setting
+     */
+    public static final String SYSTEM_PROPERTY_PREFIX = "org.cloudfoundry.reconfiguration.tomee.";
+
+    private final Properties resourceProperties;
+
+    private final VcapService service;
+
+    /**
+     * @param resourceProperties The properties of the resource, may be <code>null</code>
+     * @param service            The bound service, may be <code>null</code>
+     */
+    public ResourceSettings(Properties resourceProperties, VcapService service) {
+        this.resourceProperties = resourceProperties;
+        this.service = service;
+    }
+
+    /**
+     * @return The value of the setting or <code>null</code> if it is not set
+     */
+    public String get(String name) {
+        if (resourceProperties != null) {
+            final Object value = resourceProperties.remove(name);
+            if (value != null) {
+                return value.toString().trim();
+            }
+        }
+
+        if (service != null) {
+            final String credential = service.getCredential(name);
+            if (credential != null) {
+                return credential.trim();
+            }
+
+            final String tagPrefix = name + "=";
+            for (String tag : service.getTags()) {
+                if (tag.startsWith(tagPrefix)) {
+                    return tag.substring(tagPrefix.length()).trim();
+                }
+            }
+        }
+
+        return System.getProperty(SYSTEM_PROPERTY_PREFIX + name);
+    }
+
+    public String get(String name, String defaultValue) {
+        final String value = get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    /**
+     * @throws ConfigurationException In case the value of the setting is not an integer
+     */
+    public int getInt(String name, int defaultValue) {
+        final String value = get(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException("Setting " + name + " must be an integer: " + value, e);
+        }
+    }
+
+    public boolean getBoolean(String name, boolean defaultValue) {
+        final String value = get(name);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * The bound service, or <code>null</code> if it is not known
+     */
+    public VcapService getService() {
+        return service;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.Cloud;
+import org.springframework.cloud.CloudFactory;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable index of the {@link ServiceInfo} instances bound to the application, keyed by service id. The index is built once per {@link Cloud} snapshot and shared by all
+ * <code>provides()</code> calls, so resolving a resource is a map lookup instead of a scan over all bound services.
+ *
+ * @see DelegatingPropertiesProvider
+ */
+final class ServiceInfoIndex {
+
+    static final String SUFFIX_READ_ONLY = "-ro";
+
+    private static final String[] SERVICE_PREFIXES = new String[] { DelegatingPropertiesProvider.PREFIX_JDBC, DelegatingPropertiesProvider.PREFIX_JMS,
+            DelegatingPropertiesProvider.PREFIX_REDIS };
+
+    private final Map<String, ServiceInfo> serviceInfos;
+
+    private ServiceInfoIndex(Map<String, ServiceInfo> serviceInfos) {
+        this.serviceInfos = Collections.unmodifiableMap(serviceInfos);
+    }
+
+    /**
+     * Index the services bound to the application, through Spring Cloud Connectors unless the {@link NativeServiceBinding} is enabled
+     */
+    static ServiceInfoIndex bind(EnvironmentAccessor environment) {
+        if (NativeServiceBinding.isEnabled()) {
+            return of(NativeServiceBinding.createServiceInfos(VcapServicesSnapshot.getInstance(environment, null)));
+        }
+        return of(new CloudFactory().getCloud());
+    }
+
+    static ServiceInfoIndex of(Cloud cloud) {
+        return of(cloud.getServiceInfos());
+    }
+
+    /**
+     * Build an index over the provided services. When several services share an id the first one wins, which matches the order in which they were previously scanned.
+     */
+    static ServiceInfoIndex of(Collection<ServiceInfo> serviceInfos) {
+        final Map<String, ServiceInfo> index = new LinkedHashMap<>(serviceInfos.size() * 2);
+        for (ServiceInfo serviceInfo : serviceInfos) {
+            final String id = serviceInfo.getId();
+            if (id != null && !index.containsKey(id)) {
+                index.put(id, serviceInfo);
+            }
+        }
+        return new ServiceInfoIndex(index);
+    }
+
+    /**
+     * Find the bound service for a TomEE resource id.
+     *
+     * @param resourceId TomEE resource id, optionally qualified with the context root and the service prefix
+     * @return The matching <code>ServiceInfo</code> or <code>null</code> if there is no such bound service
+     */
+    ServiceInfo find(String resourceId) {
+        return serviceInfos.get(toCloudFoundryServiceId(resourceId));
+    }
+
+    ServiceInfo get(String cfServiceId) {
+        return serviceInfos.get(cfServiceId);
+    }
+
+    Collection<ServiceInfo> getServiceInfos() {
+        return serviceInfos.values();
+    }
+
+    int size() {
+        return serviceInfos.size();
+    }
+
+    /**
+     * Get the service a read-only resource refers to, such as <code>my-db</code> for <code>jdbc/my-db-ro</code>
+     *
+     * @param cfServiceId Cloud Foundry service id of the resource
+     * @return The id of the service or <code>null</code> if the id does not end with {@value #SUFFIX_READ_ONLY}
+     */
+    static String toPrimaryServiceId(String cfServiceId) {
+        if (cfServiceId.length() > SUFFIX_READ_ONLY.length() && cfServiceId.endsWith(SUFFIX_READ_ONLY)) {
+            return cfServiceId.substring(0, cfServiceId.length() - SUFFIX_READ_ONLY.length());
+        }
+        return null;
+    }
+
+    /**
+     * Get the service prefix ({@value DelegatingPropertiesProvider#PREFIX_JDBC}, {@value DelegatingPropertiesProvider#PREFIX_JMS} or
+     * {@value DelegatingPropertiesProvider#PREFIX_REDIS}) of a TomEE resource id, with or without a context root
+     *
+     * @return The prefix of the resource or <code>null</code> if the resource has none
+     */
+    static String getServicePrefix(String resourceId) {
+        final String withoutContextRoot = resourceId.substring(resourceId.indexOf('/') + 1);
+        for (String prefix : SERVICE_PREFIXES) {
+            if (resourceId.startsWith(prefix) || withoutContextRoot.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Strip the context root and the service prefix ({@value DelegatingPropertiesProvider#PREFIX_JDBC}, {@value DelegatingPropertiesProvider#PREFIX_JMS} or
+     * {@value DelegatingPropertiesProvider#PREFIX_REDIS}) from a TomEE resource id
+     */
+    static String toCloudFoundryServiceId(String resourceId) {
+        String cfServiceId = resourceId;
+        final int index = cfServiceId.indexOf('/');
+        if (index != -1) {
+            cfServiceId = cfServiceId.substring(index + 1);
+        }
+
+        for (String prefix : SERVICE_PREFIXES) {
+            if (cfServiceId.startsWith(prefix)) {
+                return cfServiceId.substring(prefix.length());
+            }
+        }
+        return cfServiceId;
+    }
+}
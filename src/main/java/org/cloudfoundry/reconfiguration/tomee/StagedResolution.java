@@ -0,0 +1,574 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.cloudfoundry.reconfiguration.tomee.provider.ConnectionBudget;
+import org.springframework.cloud.util.EnvironmentAccessor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Resolution of the bound services computed ahead of time, when the application is staged. The snapshot holds the configuration planned by {@link DelegatingPropertiesProvider} and the
+ * credentials served by {@link GenericServicePropertiesProvider}, together with the digest of the inputs it was computed from: <code>VCAP_SERVICES</code>, the
+ * {@link ContainerResources} the pools are sized from, and the <code>org.cloudfoundry.reconfiguration.tomee.*</code> system properties with the connection limits file they may
+ * point to.
+ * <p> The snapshot is written by {@link #main(String[])} during staging. At runtime the providers read the file pointed to by the {@value #STAGED_RESOLUTION_PROPERTY} system property
+ * through a memory-mapped buffer and use it only when its digest matches the current inputs, otherwise they fall back to live resolution. The file is verified once per process
+ * and <code>VCAP_SERVICES</code> content. </p>
+ *
+ * @see ResolutionPlan
+ */
+public final class StagedResolution {
+
+    /**
+     * System property pointing to the snapshot file to use at runtime
+     */
+    public static final String STAGED_RESOLUTION_PROPERTY = "org.cloudfoundry.reconfiguration.tomee.staged-resolution";
+
+    private static final String[] RESOURCES_FILES = new String[] { "WEB-INF/resources.xml", "META-INF/resources.xml", "conf/tomee.xml" };
+
+    private static final int MAGIC = 0x43465253;
+
+    private static final int VERSION = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Logger logger = Logger.getLogger(StagedResolution.class.getName());
+
+    private static final Object monitor = new Object();
+
+    private static volatile Verification verification;
+
+    private final String inputsDigest;
+
+    private final ResolutionPlan resolutionPlan;
+
+    private final Map<String, Properties> genericCredentials;
+
+    private StagedResolution(String inputsDigest, ResolutionPlan resolutionPlan, Map<String, Properties> genericCredentials) {
+        this.inputsDigest = inputsDigest;
+        this.resolutionPlan = resolutionPlan;
+        this.genericCredentials = genericCredentials;
+    }
+
+    /**
+     * Stage the resolution of the services bound in the current environment. The providers find the JDBC drivers and other libraries of the application through the context
+     * class loader, which is given the application directories and jars passed after the snapshot file. Staging fails when a bound service that a resource of the application
+     * refers to cannot be planned; the other services are logged and left to resolution at runtime.
+     *
+     * @param args The path of the snapshot file to write, followed by the application directories and jars
+     * @throws IOException            In case the snapshot file cannot be written, an application directory or jar does not exist or its resources cannot be read
+     * @throws ConfigurationException In case a bound service referred to by a resource cannot be planned
+     * @see #getApplicationClassLoader(String[], ClassLoader)
+     * @see #getReferencedServiceIds(String[])
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: " + StagedResolution.class.getName() + " <snapshot file> [<application directory or jar>...]");
+            System.exit(1);
+        }
+
+        final Thread thread = Thread.currentThread();
+        final ClassLoader previous = thread.getContextClassLoader();
+        final String[] applicationPaths = Arrays.copyOfRange(args, 1, args.length);
+        try (URLClassLoader applicationClassLoader = getApplicationClassLoader(applicationPaths, StagedResolution.class.getClassLoader())) {
+            thread.setContextClassLoader(applicationClassLoader);
+            final StagedResolution stagedResolution = stage(new EnvironmentAccessor(), getReferencedServiceIds(applicationPaths));
+            final Set<String> failedServiceIds = stagedResolution.resolutionPlan.getFailedServiceIds();
+            if (!failedServiceIds.isEmpty()) {
+                logger.warning("Cannot stage the configuration of " + failedServiceIds + ", which no resource of the application refers to: they are resolved at runtime");
+            }
+            stagedResolution.write(new File(args[0]));
+            logger.info("Staged the configuration of " + stagedResolution.resolutionPlan.size() + " services and the credentials of " + stagedResolution.genericCredentials.size()
+                    + " generic services to " + args[0]);
+        } finally {
+            thread.setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * Class loader of the libraries of the application. A directory contributes its <code>WEB-INF/classes</code> directory, the jars of its <code>WEB-INF/lib</code> directory
+     * and its own jars, so that an exploded web application as well as the <code>lib</code> directory of TomEE can be passed.
+     *
+     * @throws IOException In case a directory or jar does not exist
+     */
+    static URLClassLoader getApplicationClassLoader(String[] paths, ClassLoader parent) throws IOException {
+        final List<URL> urls = new ArrayList<>();
+        for (String path : paths) {
+            final File file = new File(path);
+            if (file.isDirectory()) {
+                final File classes = new File(file, "WEB-INF/classes");
+                if (classes.isDirectory()) {
+                    urls.add(classes.toURI().toURL());
+                }
+                addJars(urls, new File(file, "WEB-INF/lib"));
+                addJars(urls, file);
+            } else if (file.isFile()) {
+                urls.add(file.toURI().toURL());
+            } else {
+                throw new FileNotFoundException("No application directory or jar " + path);
+            }
+        }
+        return new URLClassLoader(urls.toArray(new URL[urls.size()]), parent);
+    }
+
+    /**
+     * Ids of the services that the resources declared in the <code>WEB-INF/resources.xml</code>, <code>META-INF/resources.xml</code> or <code>conf/tomee.xml</code> files of
+     * application directories and archives configure through {@link DelegatingPropertiesProvider}. A read-only resource refers to its primary service as well.
+     *
+     * @throws IOException In case a resources file cannot be read
+     */
+    static Set<String> getReferencedServiceIds(String[] paths) throws IOException {
+        final Set<String> serviceIds = new TreeSet<>();
+        for (String path : paths) {
+            final File file = new File(path);
+            if (file.isDirectory()) {
+                for (String resourcesFile : RESOURCES_FILES) {
+                    final File resources = new File(file, resourcesFile);
+                    if (resources.isFile()) {
+                        try (InputStream in = new FileInputStream(resources)) {
+                            addReferencedServiceIds(serviceIds, in, resources.getPath());
+                        }
+                    }
+                }
+            } else if (file.isFile()) {
+                try (ZipFile archive = new ZipFile(file)) {
+                    for (String resourcesFile : RESOURCES_FILES) {
+                        final ZipEntry entry = archive.getEntry(resourcesFile);
+                        if (entry != null) {
+                            try (InputStream in = archive.getInputStream(entry)) {
+                                addReferencedServiceIds(serviceIds, in, path + "!/" + resourcesFile);
+                            }
+                        }
+                    }
+                } catch (ZipException e) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine("Not looking up resources in " + path + ": " + e);
+                    }
+                }
+            }
+        }
+        return serviceIds;
+    }
+
+    static StagedResolution stage(EnvironmentAccessor environment) {
+        return stage(environment, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param requiredServiceIds Ids of the bound services which fail the staging if they cannot be planned, the others are left to resolution at runtime
+     * @throws ConfigurationException In case a required service cannot be planned
+     */
+    static StagedResolution stage(EnvironmentAccessor environment, Set<String> requiredServiceIds) {
+        final String inputs = getInputs(environment.getEnvValue(VcapServicesSnapshot.VCAP_SERVICES), ContainerResources.getInstance());
+        final ServiceInfoIndex serviceInfoIndex = ServiceInfoIndex.bind(environment);
+        final ResolutionPlan resolutionPlan = ResolutionPlan.build(serviceInfoIndex, PropertiesProviderRegistry.getInstance(), new Properties(), requiredServiceIds);
+
+        final Map<String, Properties> genericCredentials = new HashMap<>();
+        for (VcapService service : VcapServicesSnapshot.getInstance(environment, null).getServices()) {
+            final String credentialsId = service.getCredential("id");
+            if (credentialsId != null && !genericCredentials.containsKey(toKey(credentialsId))) {
+                final Properties credentials = new Properties();
+                for (Map.Entry<String, Object> entry : service.getCredentials().entrySet()) {
+                    credentials.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+                }
+                genericCredentials.put(toKey(credentialsId), credentials);
+            }
+        }
+
+        return new StagedResolution(digest(inputs), resolutionPlan, genericCredentials);
+    }
+
+    /**
+     * Get the staged resolution configured through the {@value #STAGED_RESOLUTION_PROPERTY} system property
+     *
+     * @return The staged resolution or <code>null</code> if none is configured or it does not match the <code>VCAP_SERVICES</code> provided by <code>environment</code>, the
+     * resources of the container or the system properties
+     */
+    static StagedResolution getInstance(EnvironmentAccessor environment) {
+        final String path = System.getProperty(STAGED_RESOLUTION_PROPERTY);
+        return path == null ? null : getInstance(environment, new File(path));
+    }
+
+    /**
+     * Get the staged resolution stored in a file. The file is verified against the current inputs once per file and <code>VCAP_SERVICES</code> content: the resources of the
+     * container, the system properties and the connection limits file are not expected to change while the process runs.
+     */
+    static StagedResolution getInstance(EnvironmentAccessor environment, File file) {
+        final String vcapServices = environment.getEnvValue(VcapServicesSnapshot.VCAP_SERVICES);
+        Verification current = verification;
+        if (current == null || !current.matches(file, vcapServices)) {
+            synchronized (monitor) {
+                current = verification;
+                if (current == null || !current.matches(file, vcapServices)) {
+                    current = new Verification(file, vcapServices, verify(file, getInputs(vcapServices, ContainerResources.getInstance())));
+                    verification = current;
+                }
+            }
+        }
+        return current.stagedResolution;
+    }
+
+    ResolutionPlan getResolutionPlan() {
+        return resolutionPlan;
+    }
+
+    /**
+     * Get the staged credentials of the service with the provided <code>credentials.id</code>, ignoring case
+     *
+     * @return A copy of the credentials or <code>null</code> if there is no such service
+     */
+    Properties getGenericCredentials(String credentialsId) {
+        final Properties credentials = credentialsId == null ? null : genericCredentials.get(toKey(credentialsId));
+        if (credentials == null) {
+            return null;
+        }
+        final Properties copy = new Properties();
+        copy.putAll(credentials);
+        return copy;
+    }
+
+    /**
+     * Write the snapshot, readable by its owner only as it holds credentials
+     */
+    void write(File file) throws IOException {
+        final File temporaryFile = new File(file.getPath() + ".tmp");
+        createOwnerOnly(temporaryFile.toPath());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, inputsDigest);
+
+            final Map<String, ResolutionPlan.Entry> entries = resolutionPlan.getEntries();
+            out.writeInt(entries.size());
+            for (Map.Entry<String, ResolutionPlan.Entry> entry : entries.entrySet()) {
+                writeString(out, entry.getKey());
+                writeString(out, entry.getValue().getPropertiesProvider());
+                out.writeInt(entry.getValue().getReadValues().size());
+                for (Map.Entry<String, String> readValue : entry.getValue().getReadValues().entrySet()) {
+                    writeString(out, readValue.getKey());
+                    out.writeBoolean(readValue.getValue() != null);
+                    if (readValue.getValue() != null) {
+                        writeString(out, readValue.getValue());
+                    }
+                }
+                writeProperties(out, entry.getValue().getTemplate());
+                out.writeInt(entry.getValue().getClaims().size());
+                for (ConnectionBudget.Claim claim : entry.getValue().getClaims()) {
+                    writeString(out, claim.getServiceId());
+                    out.writeInt(claim.getRequested());
+                    out.writeInt(claim.getConnectionLimit());
+                    out.writeInt(claim.getInstances());
+                    out.writeInt(claim.getResourcesPerService());
+                }
+            }
+
+            out.writeInt(genericCredentials.size());
+            for (Map.Entry<String, Properties> entry : genericCredentials.entrySet()) {
+                writeString(out, entry.getKey());
+                writeProperties(out, entry.getValue());
+            }
+        }
+
+        if (!temporaryFile.renameTo(file) && !(file.delete() && temporaryFile.renameTo(file))) {
+            throw new IOException("Cannot move " + temporaryFile + " to " + file);
+        }
+    }
+
+    static StagedResolution read(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported staged resolution file " + file);
+            }
+            final String inputsDigest = readString(buffer);
+
+            final int entryCount = buffer.getInt();
+            final Map<String, ResolutionPlan.Entry> entries = new HashMap<>(entryCount * 2);
+            for (int i = 0; i < entryCount; i++) {
+                final String serviceId = readString(buffer);
+                final String propertiesProvider = readString(buffer);
+                final int readValueCount = buffer.getInt();
+                final Map<String, String> readValues = new LinkedHashMap<>();
+                for (int j = 0; j < readValueCount; j++) {
+                    final String readKey = readString(buffer);
+                    readValues.put(readKey, buffer.get() != 0 ? readString(buffer) : null);
+                }
+                final Properties template = readProperties(buffer);
+                final int claimCount = buffer.getInt();
+                final List<ConnectionBudget.Claim> claims = new ArrayList<>(claimCount);
+                for (int j = 0; j < claimCount; j++) {
+                    claims.add(new ConnectionBudget.Claim(readString(buffer), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+                }
+                entries.put(serviceId, new ResolutionPlan.Entry(propertiesProvider, template, readValues, claims));
+            }
+
+            final int credentialsCount = buffer.getInt();
+            final Map<String, Properties> genericCredentials = new HashMap<>(credentialsCount * 2);
+            for (int i = 0; i < credentialsCount; i++) {
+                final String credentialsId = readString(buffer);
+                genericCredentials.put(credentialsId, readProperties(buffer));
+            }
+
+            return new StagedResolution(inputsDigest, ResolutionPlan.of(entries), genericCredentials);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt staged resolution file " + file, e);
+        }
+    }
+
+    /**
+     * Describe every input of the staged configuration: <code>VCAP_SERVICES</code>, the resources of the container, the system properties of the providers and the content of
+     * the connection limits file
+     */
+    static String getInputs(String vcapServices, ContainerResources containerResources) {
+        final StringBuilder inputs = new StringBuilder();
+        inputs.append(VcapServicesSnapshot.VCAP_SERVICES).append('=').append(vcapServices == null ? "" : vcapServices).append('\n');
+        inputs.append("memoryLimit=").append(containerResources.getMemoryLimit()).append('\n');
+        inputs.append("availableProcessors=").append(containerResources.getAvailableProcessors()).append('\n');
+        inputs.append("instances=").append(containerResources.getInstances()).append('\n');
+
+        final SortedMap<String, String> systemProperties = new TreeMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(ResourceSettings.SYSTEM_PROPERTY_PREFIX) && !name.equals(STAGED_RESOLUTION_PROPERTY)) {
+                systemProperties.put(name, System.getProperty(name));
+            }
+        }
+        for (Map.Entry<String, String> systemProperty : systemProperties.entrySet()) {
+            inputs.append(systemProperty.getKey()).append('=').append(systemProperty.getValue()).append('\n');
+        }
+
+        final String connectionLimits = System.getProperty(ConnectionBudget.CONNECTION_LIMITS_PROPERTY);
+        if (connectionLimits != null) {
+            inputs.append(readConnectionLimits(connectionLimits));
+        }
+        return inputs.toString();
+    }
+
+    /**
+     * SHA-256 digest of a content, in hexadecimal
+     */
+    static String digest(String content) {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConfigurationException(e);
+        }
+
+        final byte[] digest = messageDigest.digest((content == null ? "" : content).getBytes(UTF_8));
+        final StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Create an empty file with permissions <code>rw-------</code>, or readable and writable by its owner only on file systems without POSIX permissions
+     */
+    private static void createOwnerOnly(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            final File file = Files.createFile(path).toFile();
+            if (!(file.setReadable(false, false) && file.setReadable(true, true) && file.setWritable(false, false) && file.setWritable(true, true))) {
+                throw new IOException("Cannot restrict the permissions of " + path);
+            }
+        }
+    }
+
+    private static void addReferencedServiceIds(Set<String> serviceIds, InputStream in, String source) throws IOException {
+        final Document document;
+        try {
+            final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setExpandEntityReferences(false);
+            document = factory.newDocumentBuilder().parse(in);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Cannot read the resources of " + source, e);
+        }
+
+        final NodeList resources = document.getElementsByTagName("Resource");
+        for (int i = 0; i < resources.getLength(); i++) {
+            final Element resource = (Element) resources.item(i);
+            final String resourceId = resource.getAttribute("id");
+            if (DelegatingPropertiesProvider.class.getName().equals(resource.getAttribute("properties-provider").trim()) && !resourceId.isEmpty()) {
+                final String cfServiceId = ServiceInfoIndex.toCloudFoundryServiceId(resourceId);
+                serviceIds.add(cfServiceId);
+                final String primaryServiceId = ServiceInfoIndex.toPrimaryServiceId(cfServiceId);
+                if (primaryServiceId != null) {
+                    serviceIds.add(primaryServiceId);
+                }
+            }
+        }
+    }
+
+    private static void addJars(List<URL> urls, File directory) throws IOException {
+        final File[] jars = directory.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".jar");
+            }
+        });
+        if (jars != null) {
+            Arrays.sort(jars);
+            for (File jar : jars) {
+                urls.add(jar.toURI().toURL());
+            }
+        }
+    }
+
+    private static String readConnectionLimits(String path) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(path)), UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static StagedResolution verify(File file, String inputs) {
+        if (!file.isFile()) {
+            logger.warning("Staged resolution file " + file + " does not exist, resolving services at runtime");
+            return null;
+        }
+
+        final StagedResolution stagedResolution;
+        try {
+            stagedResolution = read(file);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot read staged resolution file " + file + ", resolving services at runtime", e);
+            return null;
+        }
+
+        if (!stagedResolution.inputsDigest.equals(digest(inputs))) {
+            logger.info("VCAP_SERVICES, the resources of the container or the system properties changed since " + file + " was staged, resolving services at runtime");
+            return null;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Using staged resolution file " + file);
+        }
+        return stagedResolution;
+    }
+
+    private static void writeProperties(DataOutputStream out, Properties properties) throws IOException {
+        out.writeInt(properties.size());
+        for (String key : properties.stringPropertyNames()) {
+            writeString(out, key);
+            writeString(out, properties.getProperty(key));
+        }
+    }
+
+    private static Properties readProperties(ByteBuffer buffer) {
+        final Properties properties = new Properties();
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            final String key = readString(buffer);
+            properties.setProperty(key, readString(buffer));
+        }
+        return properties;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String toKey(String credentialsId) {
+        return credentialsId.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Outcome of the verification of a snapshot file against the inputs of a <code>VCAP_SERVICES</code> content
+     */
+    private static final class Verification {
+
+        private final File file;
+
+        private final String vcapServices;
+
+        private final StagedResolution stagedResolution;
+
+        private Verification(File file, String vcapServices, StagedResolution stagedResolution) {
+            this.file = file;
+            this.vcapServices = vcapServices;
+            this.stagedResolution = stagedResolution;
+        }
+
+        /**
+         * The environment of the process returns the same <code>VCAP_SERVICES</code> instance on every lookup, so the comparison usually stops at the identity check
+         */
+        private boolean matches(File file, String vcapServices) {
+            return this.file.equals(file) && Objects.equals(this.vcapServices, vcapServices);
+        }
+    }
+}
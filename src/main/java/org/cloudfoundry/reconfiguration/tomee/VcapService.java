@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of a single service entry of the <code>VCAP_SERVICES</code> environment variable
+ *
+ * @see VcapServicesSnapshot
+ */
+public final class VcapService {
+
+    private final String name;
+
+    private final String label;
+
+    private final String plan;
+
+    private final List<String> tags;
+
+    private final Map<String, Object> credentials;
+
+    VcapService(String label, Map<String, Object> serviceEntry) {
+        this.label = asString(serviceEntry.get("label"), label);
+        this.name = asString(serviceEntry.get("name"), null);
+        this.plan = asString(serviceEntry.get("plan"), null);
+        this.tags = Collections.unmodifiableList(asTags(serviceEntry.get("tags")));
+        this.credentials = Collections.unmodifiableMap(asCredentials(serviceEntry.get("credentials")));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public boolean hasTag(String tag) {
+        for (String candidate : tags) {
+            if (candidate.equalsIgnoreCase(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The raw credentials of the service. Nested objects are exposed as <code>Map</code> and <code>List</code> instances.
+     */
+    public Map<String, Object> getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * Get a scalar credential as a string
+     *
+     * @param key The credential key
+     * @return The credential value or <code>null</code> if there is no such scalar credential
+     */
+    public String getCredential(String key) {
+        final Object value = credentials.get(key);
+        return value instanceof Map || value instanceof List ? null : asString(value, null);
+    }
+
+    @Override
+    public String toString() {
+        return "VcapService{name='" + name + "', label='" + label + "', plan='" + plan + "'}";
+    }
+
+    private static String asString(Object value, String defaultValue) {
+        return value == null ? defaultValue : String.valueOf(value);
+    }
+
+    private static List<String> asTags(Object value) {
+        final List<String> tags = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object tag : (List<?>) value) {
+                if (tag != null) {
+                    tags.add(String.valueOf(tag));
+                }
+            }
+        }
+        return tags;
+    }
+
+    private static Map<String, Object> asCredentials(Object value) {
+        final Map<String, Object> credentials = new LinkedHashMap<>();
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                credentials.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        return credentials;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.cloudfoundry.CloudFoundryRawServiceData;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonFactory;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonParser;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonToken;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide immutable snapshot of the parsed <code>VCAP_SERVICES</code> environment variable. The snapshot is keyed by the hash of the environment variable content, so it is parsed
+ * once and shared by all properties providers as long as the content does not change. It holds prebuilt indexes of the services by <code>credentials.id</code>, service name and label.
+ *
+ * @see VcapService
+ */
+public final class VcapServicesSnapshot {
+
+    static final String VCAP_SERVICES = "VCAP_SERVICES";
+
+    private static final Logger logger = Logger.getLogger(VcapServicesSnapshot.class.getName());
+
+    private static final VcapServicesSnapshot EMPTY = new VcapServicesSnapshot("", Collections.<VcapService>emptyList());
+
+    private static volatile VcapServicesSnapshot current = EMPTY;
+
+    private final String content;
+
+    private final int contentHash;
+
+    private final List<VcapService> services;
+
+    private final Map<String, VcapService> servicesByCredentialsId;
+
+    private final Map<String, VcapService> servicesByName;
+
+    private final Map<String, List<VcapService>> servicesByLabel;
+
+    private VcapServicesSnapshot(String content, List<VcapService> services) {
+        this.content = content;
+        this.contentHash = content.hashCode();
+        this.services = Collections.unmodifiableList(services);
+
+        final Map<String, VcapService> byCredentialsId = new HashMap<>();
+        final Map<String, VcapService> byName = new HashMap<>();
+        final Map<String, List<VcapService>> byLabel = new HashMap<>();
+        for (VcapService service : services) {
+            final String credentialsId = service.getCredential("id");
+            if (credentialsId != null && !byCredentialsId.containsKey(toKey(credentialsId))) {
+                byCredentialsId.put(toKey(credentialsId), service);
+            }
+            if (service.getName() != null && !byName.containsKey(service.getName())) {
+                byName.put(service.getName(), service);
+            }
+            if (service.getLabel() != null) {
+                List<VcapService> labelServices = byLabel.get(service.getLabel());
+                if (labelServices == null) {
+                    labelServices = new ArrayList<>(1);
+                    byLabel.put(service.getLabel(), labelServices);
+                }
+                labelServices.add(service);
+            }
+        }
+        this.servicesByCredentialsId = Collections.unmodifiableMap(byCredentialsId);
+        this.servicesByName = Collections.unmodifiableMap(byName);
+        this.servicesByLabel = Collections.unmodifiableMap(byLabel);
+    }
+
+    /**
+     * Get the snapshot of the <code>VCAP_SERVICES</code> environment variable of the current process
+     */
+    public static VcapServicesSnapshot getInstance() {
+        return getInstance(new EnvironmentAccessor(), null);
+    }
+
+    /**
+     * Get the snapshot of the <code>VCAP_SERVICES</code> environment variable provided by <code>environment</code>. The snapshot is reused as long as the content of the variable does
+     * not change.
+     *
+     * @param environment  The environment to read <code>VCAP_SERVICES</code> from
+     * @param objectMapper The mapper used to parse <code>VCAP_SERVICES</code> or <code>null</code> to use a streaming parser
+     * @throws ConfigurationException In case <code>VCAP_SERVICES</code> cannot be parsed
+     */
+    public static VcapServicesSnapshot getInstance(EnvironmentAccessor environment, ObjectMapper objectMapper) {
+        final String servicesString = environment.getEnvValue(VCAP_SERVICES);
+        final String content = servicesString == null ? "" : servicesString;
+
+        VcapServicesSnapshot snapshot = current;
+        if (!snapshot.matches(content)) {
+            final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.VCAP_PARSE);
+            try {
+                snapshot = objectMapper == null ? parse(content, new JsonFactory()) : parse(content, objectMapper);
+            } finally {
+                span.end();
+            }
+            current = snapshot;
+        }
+        return snapshot;
+    }
+
+    static VcapServicesSnapshot parse(String content, ObjectMapper objectMapper) {
+        final List<VcapService> services = new ArrayList<>();
+        if (content.length() > 0) {
+            final CloudFoundryRawServiceData rawServices;
+            try {
+                rawServices = objectMapper.readValue(content, CloudFoundryRawServiceData.class);
+            } catch (Exception e) {
+                throw new ConfigurationException(e);
+            }
+
+            for (Map.Entry<String, List<Map<String, Object>>> entry : rawServices.entrySet()) {
+                if (entry.getValue() != null) {
+                    for (Map<String, Object> serviceEntry : entry.getValue()) {
+                        services.add(new VcapService(entry.getKey(), serviceEntry));
+                    }
+                }
+            }
+        }
+        return of(content, services);
+    }
+
+    /**
+     * Parse with the streaming parser, into the same maps and lists as an <code>ObjectMapper</code>. This skips the set up of data binding, which dominates the first parse.
+     */
+    static VcapServicesSnapshot parse(String content, JsonFactory jsonFactory) {
+        final List<VcapService> services = new ArrayList<>();
+        if (content.length() > 0) {
+            try (JsonParser parser = jsonFactory.createParser(content)) {
+                readServices(parser, services);
+            } catch (IOException e) {
+                throw new ConfigurationException(e);
+            }
+        }
+        return of(content, services);
+    }
+
+    public List<VcapService> getServices() {
+        return services;
+    }
+
+    /**
+     * Find a service by the <code>id</code> entry of its credentials, ignoring case
+     *
+     * @return The first service with the provided credentials id or <code>null</code> if there is no such service
+     */
+    public VcapService getServiceByCredentialsId(String credentialsId) {
+        return credentialsId == null ? null : servicesByCredentialsId.get(toKey(credentialsId));
+    }
+
+    /**
+     * Find a service by its name. The name of a bound service is also the id of its Spring Cloud <code>ServiceInfo</code>.
+     *
+     * @return The service with the provided name or <code>null</code> if there is no such service
+     */
+    public VcapService getServiceByName(String name) {
+        return name == null ? null : servicesByName.get(name);
+    }
+
+    public List<VcapService> getServicesByLabel(String label) {
+        final List<VcapService> labelServices = servicesByLabel.get(label);
+        return labelServices == null ? Collections.<VcapService>emptyList() : Collections.unmodifiableList(labelServices);
+    }
+
+    private static VcapServicesSnapshot of(String content, List<VcapService> services) {
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Parsed " + services.size() + " services from " + VCAP_SERVICES);
+        }
+        return new VcapServicesSnapshot(content, services);
+    }
+
+    private static void readServices(JsonParser parser, List<VcapService> services) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new ConfigurationException(VCAP_SERVICES + " is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String label = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                    if (token == JsonToken.START_OBJECT) {
+                        services.add(new VcapService(label, readObject(parser)));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        final Map<String, Object> object = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            object.put(name, readValue(parser, parser.nextToken()));
+        }
+        return object;
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            throw new ConfigurationException("Unexpected end of " + VCAP_SERVICES);
+        }
+        switch (token) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                final List<Object> array = new ArrayList<>();
+                JsonToken element;
+                while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    array.add(readValue(parser, element));
+                }
+                return array;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.getEmbeddedObject();
+        }
+    }
+
+    private boolean matches(String content) {
+        return this.contentHash == content.hashCode() && this.content.equals(content);
+    }
+
+    private static String toKey(String credentialsId) {
+        return credentialsId.toLowerCase(Locale.ENGLISH);
+    }
+}
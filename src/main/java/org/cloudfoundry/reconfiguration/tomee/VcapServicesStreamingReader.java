@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonFactory;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonParser;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonStreamContext;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Reads the credentials of a single service out of <code>VCAP_SERVICES</code> with a streaming {@link JsonParser}, without building the tree of all bound services. The content is scanned
+ * twice: the first scan reads only the <code>credentials.id</code> entries and stops at the first match, the second one skips the services in front of the match and materializes only the
+ * credentials of the matching service. All other subtrees are skipped without being built.
+ *
+ * @see GenericServicePropertiesProvider
+ */
+final class VcapServicesStreamingReader {
+
+    private static final String CREDENTIALS = "credentials";
+
+    private static final String CREDENTIALS_ID = "id";
+
+    private static final int NOT_FOUND = -1;
+
+    private final JsonFactory jsonFactory;
+
+    VcapServicesStreamingReader(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * Copy the credentials of the first service whose <code>credentials.id</code> matches <code>credentialsId</code>, ignoring case, into <code>target</code>. The values are
+     * converted like the ones of a {@link VcapServicesSnapshot}, with {@link String#valueOf(Object)} of their mapped value, so both modes give the same properties for nested
+     * credentials.
+     *
+     * @param content       The content of <code>VCAP_SERVICES</code>
+     * @param credentialsId The credentials id to look for
+     * @param target        The properties to copy the credentials into
+     * @return <code>true</code> if a matching service was found
+     * @throws ConfigurationException In case <code>content</code> cannot be parsed
+     */
+    boolean readCredentials(String content, String credentialsId, Properties target) {
+        if (content == null || content.length() == 0 || credentialsId == null) {
+            return false;
+        }
+
+        try {
+            final int index = findServiceIndex(content, credentialsId);
+            if (index == NOT_FOUND) {
+                return false;
+            }
+            copyCredentials(content, index, target);
+            return true;
+        } catch (IOException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private int findServiceIndex(String content, String credentialsId) throws IOException {
+        final JsonParser parser = jsonFactory.createParser(content);
+        try {
+            int index = 0;
+            while (nextService(parser)) {
+                if (matchesCredentialsId(parser, credentialsId)) {
+                    return index;
+                }
+                index++;
+            }
+            return NOT_FOUND;
+        } finally {
+            parser.close();
+        }
+    }
+
+    private void copyCredentials(String content, int index, Properties target) throws IOException {
+        final JsonParser parser = jsonFactory.createParser(content);
+        try {
+            for (int i = 0; i <= index; i++) {
+                if (!nextService(parser)) {
+                    throw new ConfigurationException("VCAP_SERVICES changed while reading it");
+                }
+                if (i < index) {
+                    parser.skipChildren();
+                }
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                if (CREDENTIALS.equals(fieldName) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String key = parser.getCurrentName();
+                        parser.nextToken();
+                        target.setProperty(key, String.valueOf(parser.readValueAs(Object.class)));
+                    }
+                    return;
+                }
+                parser.skipChildren();
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Advance the parser to the <code>START_OBJECT</code> token of the next service entry, skipping anything which is not a service entry
+     *
+     * @return <code>false</code> if there are no more service entries
+     */
+    private static boolean nextService(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            final JsonStreamContext parent = parser.getParsingContext().getParent();
+            if (token == JsonToken.START_OBJECT) {
+                if (parent.inArray()) {
+                    return true;
+                }
+                if (!parent.inRoot()) {
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_ARRAY && !(parent.inObject() && parent.getParent().inRoot())) {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scan the service entry the parser is positioned at, reading only the <code>credentials.id</code> entry. Stops right after a matching id, otherwise leaves the parser at the
+     * <code>END_OBJECT</code> token of the service entry.
+     */
+    private static boolean matchesCredentialsId(JsonParser parser, String credentialsId) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && CREDENTIALS.equals(fieldName)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String key = parser.getCurrentName();
+                    if (parser.nextToken() == JsonToken.VALUE_STRING && CREDENTIALS_ID.equals(key) && credentialsId.equalsIgnoreCase(parser.getText())) {
+                        return true;
+                    }
+                    parser.skipChildren();
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Configures an <code>org.apache.activemq.pool.PooledConnectionFactory</code> for an ActiveMQ broker, declared with its broker URL as constructor argument:
+ * <pre>
+ * &lt;Resource id="jms/my-broker" class-name="org.apache.activemq.pool.PooledConnectionFactory" constructor="brokerURL"
+ *           properties-provider="org.cloudfoundry.reconfiguration.tomee.DelegatingPropertiesProvider"/&gt;
+ * </pre>
+ * The credentials of the service are passed as <code>jms.userName</code> and <code>jms.password</code> options of the broker URL. Sessions are cached by the pool and reuse an
+ * anonymous producer, so sending a message does not open a connection, a session or a producer.
+ */
+public final class ActiveMqPropertiesProvider extends MessageBrokerPropertiesProvider {
+
+    /**
+     * Broker URL, constructor argument of the pooled connection factory
+     */
+    static final String PROPERTY_BROKER_URL = "brokerURL";
+
+    /**
+     * Number of connections of the pool
+     */
+    static final String PROPERTY_MAX_CONNECTIONS = "maxConnections";
+
+    /**
+     * Number of sessions cached by each connection of the pool
+     */
+    static final String PROPERTY_MAX_SESSIONS = "maximumActiveSessionPerConnection";
+
+    /**
+     * Reuse a single anonymous producer per session instead of creating one per destination
+     */
+    static final String PROPERTY_USE_ANONYMOUS_PRODUCERS = "useAnonymousProducers";
+
+    /**
+     * Wait for a session when all the sessions of the pool are in use instead of failing
+     */
+    static final String PROPERTY_BLOCK_IF_SESSION_POOL_IS_FULL = "blockIfSessionPoolIsFull";
+
+    /**
+     * Time in milliseconds to wait for a session
+     */
+    static final String PROPERTY_BLOCK_IF_SESSION_POOL_IS_FULL_TIMEOUT = "blockIfSessionPoolIsFullTimeout";
+
+    /**
+     * Replace the connections that fail
+     */
+    static final String PROPERTY_RECONNECT_ON_EXCEPTION = "reconnectOnException";
+
+    private static final int PRIORITY = 700;
+
+    private static final String[] MARKERS = new String[] { "activemq", "amazonmq" };
+
+    private static final String[] BROKER_URL_CREDENTIALS = new String[] { "broker_url", "brokerUrl", "openwire_uri", "openwire", "uri", "url" };
+
+    private static final String[] BROKER_URL_SCHEMES = new String[] { "tcp:", "ssl:", "nio:", "nio+ssl:", "auto:", "auto+ssl:", "failover:" };
+
+    private static final String[] USER_NAME_CREDENTIALS = new String[] { "username", "user" };
+
+    private static final String PASSWORD_CREDENTIAL = "password";
+
+    private static final String SESSION_WAIT_TIMEOUT = "30000";
+
+    private static final Logger logger = Logger.getLogger(ActiveMqPropertiesProvider.class.getName());
+
+    public ActiveMqPropertiesProvider() {
+    }
+
+    ActiveMqPropertiesProvider(EnvironmentAccessor environment) {
+        super(environment);
+    }
+
+    /**
+     * An ActiveMQ service is tagged or labeled as such, or lists an OpenWire broker URL
+     */
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    @Override
+    protected boolean accept(VcapService service) {
+        return hasMarker(service, MARKERS) || getBrokerUrl(service) != null;
+    }
+
+    @Override
+    protected void configure(VcapService service, Properties properties) {
+        final String brokerUrl = getBrokerUrl(service);
+        if (brokerUrl == null) {
+            throw new ConfigurationException("No OpenWire broker URL in the credentials of " + service.getName());
+        }
+
+        final String userName = getCredential(service, USER_NAME_CREDENTIALS);
+        final String password = getCredential(service, PASSWORD_CREDENTIAL);
+        String url = brokerUrl;
+        if (userName != null) {
+            url = withOption(url, "jms.userName", userName);
+        }
+        if (password != null) {
+            url = withOption(url, "jms.password", password);
+        }
+        properties.setProperty(PROPERTY_BROKER_URL, url);
+
+        if (properties.getProperty(PROPERTY_MAX_SESSIONS) == null) {
+            properties.setProperty(PROPERTY_MAX_SESSIONS, Integer.toString(getMaxSessions(service, properties)));
+        }
+        setIfAbsent(properties, PROPERTY_MAX_CONNECTIONS, "1");
+        setIfAbsent(properties, PROPERTY_USE_ANONYMOUS_PRODUCERS, "true");
+        setIfAbsent(properties, PROPERTY_BLOCK_IF_SESSION_POOL_IS_FULL, "true");
+        setIfAbsent(properties, PROPERTY_BLOCK_IF_SESSION_POOL_IS_FULL_TIMEOUT, SESSION_WAIT_TIMEOUT);
+        setIfAbsent(properties, PROPERTY_RECONNECT_ON_EXCEPTION, "true");
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Pooling " + properties.getProperty(PROPERTY_MAX_CONNECTIONS) + " connections of " + properties.getProperty(PROPERTY_MAX_SESSIONS) + " sessions to "
+                    + service.getName());
+        }
+    }
+
+    private static String getBrokerUrl(VcapService service) {
+        for (String key : BROKER_URL_CREDENTIALS) {
+            final String value = service.getCredential(key);
+            if (value != null) {
+                for (String scheme : BROKER_URL_SCHEMES) {
+                    if (value.startsWith(scheme)) {
+                        return value;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add an option to a broker URL, unless it is already set. The options of a composite URL such as <code>failover:(tcp://a:61616,tcp://b:61616)</code> follow the closing
+     * parenthesis. ActiveMQ decodes the options of a composite URL once and the options of a plain URL twice, so the value is encoded accordingly.
+     */
+    static String withOption(String brokerUrl, String name, String value) {
+        final int composite = brokerUrl.lastIndexOf(')');
+        final int query = brokerUrl.indexOf('?', composite + 1);
+        if (query >= 0 && (brokerUrl.indexOf("?" + name + "=", query) >= 0 || brokerUrl.indexOf("&" + name + "=", query) >= 0)) {
+            return brokerUrl;
+        }
+        final String encodedValue = composite < 0 ? encode(encode(value)) : encode(value);
+        return brokerUrl + (query < 0 ? '?' : '&') + name + "=" + encodedValue;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private static void setIfAbsent(Properties properties, String key, String value) {
+        if (properties.getProperty(key) == null) {
+            properties.setProperty(key, value);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ContainerResources;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Shares the connection limit of a database service between the instances of the application and between the resources of this JVM which point at the same service.
+ * <p> The limit is read from the <code>max-connections</code> setting, from the <code>max_connections</code>, <code>maxConnections</code>, <code>connection_limit</code> or
+ * <code>connectionLimit</code> credentials, or from the table of known plan limits. It is divided by the number of instances of the application, taken from the <code>instances</code>
+ * setting or from <code>VCAP_APPLICATION</code>, and then by the <code>resources-per-service</code> setting. Every resource configured for the service claims its share of the
+ * budget of this instance; once the budget is exhausted further resources get a single connection. Without the <code>resources-per-service</code> setting the first resource
+ * takes the whole budget, and every further resource pointing at the same service gets the budget divided by the number of resources seen so far, with a warning as the
+ * budget may then be exceeded. A resource configured again releases its previous share. </p>
+ * <p> Computing a configuration has no side effect on the budget: the providers only {@link #request request} connections, capped by the share of a single resource, and
+ * the requests are collected by a {@link #defer() deferral}. The connections are claimed when the configuration is applied to a resource, which may shrink its pool to
+ * what is left of the budget. </p>
+ *
+ * @see ResourceSettings
+ */
+public final class ConnectionBudget {
+
+    static final String SETTING_MAX_CONNECTIONS = "max-connections";
+
+    static final String SETTING_INSTANCES = "instances";
+
+    static final String SETTING_RESOURCES_PER_SERVICE = "resources-per-service";
+
+    /**
+     * System property pointing to a file of connection limits per service plan, added to the ones of <code>connection-limits.properties</code>
+     */
+    public static final String CONNECTION_LIMITS_PROPERTY = ResourceSettings.SYSTEM_PROPERTY_PREFIX + "connection-limits";
+
+    private static final String CONNECTION_LIMITS_RESOURCE = "connection-limits.properties";
+
+    private static final String[] CONNECTION_LIMIT_CREDENTIALS = new String[] { "max_connections", "maxConnections", "connection_limit", "connectionLimit" };
+
+    private static final Logger logger = Logger.getLogger(ConnectionBudget.class.getName());
+
+    private static final ConnectionBudget instance = new ConnectionBudget(loadPlanLimits());
+
+    private final Properties planLimits;
+
+    private static final int UNSET = 0;
+
+    private final Map<String, Map<String, Claim>> allocations = new HashMap<>();
+
+    private final ThreadLocal<List<Claim>> deferredClaims = new ThreadLocal<>();
+
+    ConnectionBudget(Properties planLimits) {
+        this.planLimits = planLimits;
+    }
+
+    public static ConnectionBudget getInstance() {
+        return instance;
+    }
+
+    /**
+     * Collect the connections requested on the current thread until {@link Deferral#end()}
+     */
+    public Deferral defer() {
+        final Deferral deferral = new Deferral(deferredClaims.get());
+        deferredClaims.set(deferral.claims);
+        return deferral;
+    }
+
+    /**
+     * Request connections of a service for a resource, without allocating them. The request is collected by the deferral of the current thread, if any.
+     *
+     * @param serviceId          Id of the bound service
+     * @param requested          The number of connections the resource would like to use
+     * @param settings           Settings of the resource
+     * @param containerResources Resources of the container
+     * @return The number of connections the resource may use if it gets its full share of the budget, at most <code>requested</code>
+     * @throws ConfigurationException In case of an invalid setting
+     */
+    int request(String serviceId, int requested, ResourceSettings settings, ContainerResources containerResources) {
+        final int connectionLimit = getConnectionLimit(settings);
+        final int instances = Math.max(1, settings.getInt(SETTING_INSTANCES, containerResources.getInstances()));
+        final int resourcesPerService = Math.max(UNSET, settings.getInt(SETTING_RESOURCES_PER_SERVICE, UNSET));
+        if (connectionLimit <= 0) {
+            return requested;
+        }
+
+        final Claim claim = new Claim(serviceId, Math.min(requested, getFairShare(connectionLimit, instances, resourcesPerService)), connectionLimit, instances,
+                resourcesPerService);
+        final List<Claim> claims = deferredClaims.get();
+        if (claims != null) {
+            claims.add(claim);
+        }
+        return claim.requested;
+    }
+
+    /**
+     * Claim the connections requested while computing the configuration of a resource. When the budget left for a service is smaller than the request, the pool of the
+     * configuration is shrunk to what is left.
+     *
+     * @param resourceId    TomEE resource id
+     * @param claims        The connections requested while computing the configuration
+     * @param configuration The configuration of the resource, updated in place
+     */
+    public void claim(String resourceId, List<Claim> claims, Properties configuration) {
+        for (Claim claim : claims) {
+            final int share = allocate(resourceId, claim);
+            if (share < claim.requested) {
+                RelationalServicePropertiesProvider.resizeConnectionPool(configuration, claim.requested, share);
+            }
+        }
+    }
+
+    synchronized int allocate(String resourceId, Claim claim) {
+        Map<String, Claim> shares = allocations.get(claim.serviceId);
+        if (shares == null) {
+            shares = new LinkedHashMap<>();
+            allocations.put(claim.serviceId, shares);
+        }
+        shares.remove(resourceId);
+
+        int allocated = 0;
+        boolean planned = claim.resourcesPerService != UNSET;
+        for (Claim share : shares.values()) {
+            allocated += share.requested;
+            planned &= share.resourcesPerService != UNSET;
+        }
+        final int instanceBudget = Math.max(1, claim.connectionLimit / claim.instances);
+        final int remaining = instanceBudget - allocated;
+
+        int share = Math.min(claim.requested, remaining);
+        if (!planned && !shares.isEmpty()) {
+            final int resources = shares.size() + 1;
+            share = Math.min(claim.requested, Math.max(1, instanceBudget / resources));
+            if (share > remaining) {
+                logger.warning("Resources " + shares.keySet() + " and " + resourceId + " share the connection budget of " + claim.serviceId + " (" + instanceBudget
+                        + " connections per instance), allocating " + share + " connections to " + resourceId + ": the budget may be exceeded by " + (share - Math.max(0, remaining))
+                        + " connections until the other resources are configured again, set " + SETTING_RESOURCES_PER_SERVICE + " to " + resources
+                        + " to divide it evenly");
+            }
+        } else if (share < 1) {
+            logger.warning("Connection budget of " + claim.serviceId + " is exhausted (" + instanceBudget + " connections per instance), allocating a single connection to "
+                    + resourceId);
+            share = 1;
+        }
+        shares.put(resourceId, new Claim(claim.serviceId, share, claim.connectionLimit, claim.instances, claim.resourcesPerService));
+
+        logger.info("Connection budget of " + claim.serviceId + ": " + share + " connections for " + resourceId + " (limit=" + claim.connectionLimit + ", instances="
+                + claim.instances + ", resources=" + Math.max(shares.size(), claim.resourcesPerService) + ", remaining=" + Math.max(0, remaining - share) + ")");
+        return share;
+    }
+
+    private static int getFairShare(int connectionLimit, int instances, int resourcesPerService) {
+        return Math.max(1, Math.max(1, connectionLimit / instances) / Math.max(1, resourcesPerService));
+    }
+
+    int getConnectionLimit(ResourceSettings settings) {
+        final int configuredLimit = settings.getInt(SETTING_MAX_CONNECTIONS, ContainerResources.UNKNOWN);
+        if (configuredLimit > 0) {
+            return configuredLimit;
+        }
+
+        final VcapService service = settings.getService();
+        if (service == null) {
+            return ContainerResources.UNKNOWN;
+        }
+
+        for (String key : CONNECTION_LIMIT_CREDENTIALS) {
+            final int limit = toInt(service.getCredential(key));
+            if (limit > 0) {
+                return limit;
+            }
+        }
+
+        if (service.getPlan() != null) {
+            String planLimit = planLimits.getProperty(service.getLabel() + "." + service.getPlan());
+            if (planLimit == null) {
+                planLimit = planLimits.getProperty(service.getPlan());
+            }
+            return toInt(planLimit);
+        }
+        return ContainerResources.UNKNOWN;
+    }
+
+    private static int toInt(String value) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException ignore) {
+            }
+        }
+        return ContainerResources.UNKNOWN;
+    }
+
+    private static Properties loadPlanLimits() {
+        final Properties planLimits = new Properties();
+        try (InputStream in = ConnectionBudget.class.getResourceAsStream(CONNECTION_LIMITS_RESOURCE)) {
+            if (in != null) {
+                planLimits.load(in);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot read " + CONNECTION_LIMITS_RESOURCE, e);
+        }
+
+        final String path = System.getProperty(CONNECTION_LIMITS_PROPERTY);
+        if (path != null) {
+            try (InputStream in = new FileInputStream(path)) {
+                planLimits.load(in);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Cannot read connection limits from " + path, e);
+            }
+        }
+        return planLimits;
+    }
+
+    /**
+     * Connections of a service requested for a resource, together with the inputs of its budget
+     */
+    public static final class Claim {
+
+        private final String serviceId;
+
+        private final int requested;
+
+        private final int connectionLimit;
+
+        private final int instances;
+
+        private final int resourcesPerService;
+
+        /**
+         * @param resourcesPerService The <code>resources-per-service</code> setting, 0 when it is not set
+         */
+        public Claim(String serviceId, int requested, int connectionLimit, int instances, int resourcesPerService) {
+            this.serviceId = serviceId;
+            this.requested = requested;
+            this.connectionLimit = connectionLimit;
+            this.instances = instances;
+            this.resourcesPerService = resourcesPerService;
+        }
+
+        public String getServiceId() {
+            return serviceId;
+        }
+
+        public int getRequested() {
+            return requested;
+        }
+
+        public int getConnectionLimit() {
+            return connectionLimit;
+        }
+
+        public int getInstances() {
+            return instances;
+        }
+
+        public int getResourcesPerService() {
+            return resourcesPerService;
+        }
+    }
+
+    /**
+     * Requests collected on a thread, see {@link #defer()}
+     */
+    public final class Deferral {
+
+        private final List<Claim> previous;
+
+        private final List<Claim> claims = new ArrayList<>();
+
+        private Deferral(List<Claim> previous) {
+            this.previous = previous;
+        }
+
+        /**
+         * Stop collecting requests on the current thread
+         *
+         * @return The connections requested since {@link #defer()}
+         */
+        public List<Claim> end() {
+            if (previous == null) {
+                deferredClaims.remove();
+            } else {
+                deferredClaims.set(previous);
+            }
+            return claims;
+        }
+    }
+}
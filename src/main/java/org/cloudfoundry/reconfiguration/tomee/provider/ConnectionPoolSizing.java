@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ContainerResources;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Derives the size of a connection pool from the resources of the container and the plan of the bound service.
+ * <ul>
+ * <li>Processors: a pool larger than <code>2 * processors + 1</code> connections mostly adds contention.</li>
+ * <li>Memory: each connection costs driver buffers and statement caches, one connection is allowed per {@value #MEMORY_PER_CONNECTION} MB of container memory.</li>
+ * <li>Plan: plans of shared or free tiers are capped at {@value #SMALL_PLAN_MAX_ACTIVE} connections.</li>
+ * </ul>
+ * The computed size can be overridden with the <code>max-active</code> setting, and the sizing can be switched back to the fixed size of {@value #FIXED_MAX_ACTIVE} connections with
+ * <code>pool-sizing=fixed</code>.
+ *
+ * @see ResourceSettings
+ */
+final class ConnectionPoolSizing {
+
+    static final String SETTING_POOL_SIZING = "pool-sizing";
+
+    static final String SETTING_MAX_ACTIVE = "max-active";
+
+    static final String POOL_SIZING_AUTO = "auto";
+
+    static final String POOL_SIZING_FIXED = "fixed";
+
+    static final int FIXED_MAX_ACTIVE = 2;
+
+    static final int MEMORY_PER_CONNECTION = 32;
+
+    static final int SMALL_PLAN_MAX_ACTIVE = 4;
+
+    private static final String[] SMALL_PLAN_MARKERS = new String[] { "free", "shared", "spark", "hobby", "dev", "trial" };
+
+    private static final Logger logger = Logger.getLogger(ConnectionPoolSizing.class.getName());
+
+    private final ContainerResources containerResources;
+
+    ConnectionPoolSizing(ContainerResources containerResources) {
+        this.containerResources = containerResources;
+    }
+
+    /**
+     * Compute the maximum number of active connections of the pool of a resource
+     *
+     * @param resource Name of the resource, used for logging
+     * @param settings Settings of the resource
+     * @return The maximum number of active connections
+     * @throws ConfigurationException In case of an invalid setting
+     */
+    int getMaxActive(String resource, ResourceSettings settings) {
+        final int maxActive = settings.getInt(SETTING_MAX_ACTIVE, -1);
+        if (maxActive > 0) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Sizing connection pool of " + resource + ": maxActive=" + maxActive + " (set by " + SETTING_MAX_ACTIVE + ")");
+            }
+            return maxActive;
+        }
+
+        final String poolSizing = settings.get(SETTING_POOL_SIZING, POOL_SIZING_AUTO).toLowerCase(Locale.ENGLISH);
+        if (POOL_SIZING_FIXED.equals(poolSizing)) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Sizing connection pool of " + resource + ": maxActive=" + FIXED_MAX_ACTIVE + " (" + SETTING_POOL_SIZING + "=" + POOL_SIZING_FIXED + ")");
+            }
+            return FIXED_MAX_ACTIVE;
+        }
+        if (!POOL_SIZING_AUTO.equals(poolSizing)) {
+            throw new ConfigurationException("Unsupported " + SETTING_POOL_SIZING + " for " + resource + ": " + poolSizing);
+        }
+
+        final StringBuilder reasoning = new StringBuilder();
+        final int processorLimit = 2 * containerResources.getAvailableProcessors() + 1;
+        int limit = processorLimit;
+        reasoning.append("processors=").append(containerResources.getAvailableProcessors()).append(" -> ").append(processorLimit);
+
+        if (containerResources.getMemoryLimit() != ContainerResources.UNKNOWN) {
+            final int memoryLimit = Math.max(1, containerResources.getMemoryLimit() / MEMORY_PER_CONNECTION);
+            limit = Math.min(limit, memoryLimit);
+            reasoning.append(", memory=").append(containerResources.getMemoryLimit()).append("MB -> ").append(memoryLimit);
+        }
+
+        final VcapService service = settings.getService();
+        if (service != null && service.getPlan() != null && isSmallPlan(service.getPlan())) {
+            limit = Math.min(limit, SMALL_PLAN_MAX_ACTIVE);
+            reasoning.append(", plan=").append(service.getPlan()).append(" -> ").append(SMALL_PLAN_MAX_ACTIVE);
+        }
+
+        final int sized = Math.max(FIXED_MAX_ACTIVE, limit);
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Sizing connection pool of " + resource + ": maxActive=" + sized + " (" + reasoning + ")");
+        }
+        return sized;
+    }
+
+    private static boolean isSmallPlan(String plan) {
+        final String normalizedPlan = plan.toLowerCase(Locale.ENGLISH);
+        for (String marker : SMALL_PLAN_MARKERS) {
+            if (normalizedPlan.contains(marker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
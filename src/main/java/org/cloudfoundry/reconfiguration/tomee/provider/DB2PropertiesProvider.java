@@ -18,24 +18,50 @@ package org.cloudfoundry.reconfiguration.tomee.provider;
 
 import org.springframework.cloud.service.common.RelationalServiceInfo;
 
+import java.util.Map;
 import java.util.Properties;
 
 public final class DB2PropertiesProvider extends RelationalServicePropertiesProvider {
 
     private static final String JDBC_DRIVER_CLASS = "com.ibm.db2.jcc.DB2Driver";
 
+    private static final int PRIORITY = 500;
+
     private static final String JDBC_SCHEMA = "jdbc:db2:";
 
     private static final String VALIDATION_QUERY = "VALUES 1";
 
+    /**
+     * Throughput profile of the IBM Data Server driver: query results are fetched by blocks of 64 KB instead of 32 KB per round trip, a size supported by DB2 for Linux, UNIX
+     * and Windows and by DB2 for z/OS. Logging in times out after 10 seconds and reading from a hung socket after 5 minutes, in seconds.
+     */
+    private static final Map<String, String> THROUGHPUT = connectionProperties(
+            "queryDataSize", "65535",
+            "loginTimeout", "10",
+            "blockingReadConnectionTimeout", "300");
+
     @Override
     protected void configure(RelationalServiceInfo serviceInfo, Properties properties) {
-        properties.setProperty(PROPERTY_JDBC_DRIVER, JDBC_DRIVER_CLASS);
-        properties.setProperty(PROPERTY_VALIDATION_QUERY, VALIDATION_QUERY);
+        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriver(serviceInfo, JDBC_DRIVER_CLASS));
+    }
+
+    @Override
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return THROUGHPUT;
+    }
+
+    @Override
+    protected String getValidationQuery() {
+        return VALIDATION_QUERY;
     }
 
     @Override
     protected String getJdbcSchema() {
         return JDBC_SCHEMA;
     }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+
+/**
+ * Eviction of the idle connections of a pool, derived from the time after which idle connections are dropped by the database server or by the network in between.
+ * <ul>
+ * <li>Idle timeout: the <code>idle-timeout</code> setting in milliseconds, or the <code>wait_timeout</code>, <code>idle_timeout</code> or <code>idleTimeout</code> credential in
+ * seconds, or the idle timeout of the database server. It is capped by the <code>network-idle-timeout</code> setting, {@value #NETWORK_IDLE_TIMEOUT} ms by default, the lowest
+ * idle timeout of common load balancers and NAT gateways. <code>0</code> means that idle connections are never dropped.</li>
+ * <li>Idle connections are evicted after half of the idle timeout, by an evictor running every quarter of the idle timeout and at least every {@value #MAX_EVICTION_RUN_INTERVAL} ms,
+ * so no idle connection outlives the idle timeout.</li>
+ * <li>Connections are recycled after the <code>max-age</code> setting, {@value #MAX_AGE} ms by default. <code>0</code> disables recycling.</li>
+ * </ul>
+ *
+ * @see ResourceSettings
+ */
+final class EvictionProfile {
+
+    static final String SETTING_IDLE_TIMEOUT = "idle-timeout";
+
+    static final String SETTING_NETWORK_IDLE_TIMEOUT = "network-idle-timeout";
+
+    static final String SETTING_MAX_AGE = "max-age";
+
+    static final int NETWORK_IDLE_TIMEOUT = 240000;
+
+    static final int MAX_AGE = 1800000;
+
+    static final int MAX_EVICTION_RUN_INTERVAL = 30000;
+
+    private static final String[] IDLE_TIMEOUT_CREDENTIALS = new String[] { "wait_timeout", "idle_timeout", "idleTimeout" };
+
+    private final int idleTimeout;
+
+    private final int maxAge;
+
+    EvictionProfile(int idleTimeout, int maxAge) {
+        this.idleTimeout = idleTimeout;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * @param serverIdleTimeout The idle timeout of the database server in milliseconds, <code>0</code> if the server does not drop idle connections
+     * @param settings          Settings of the resource
+     * @throws ConfigurationException In case of an invalid setting or credential
+     */
+    static EvictionProfile of(int serverIdleTimeout, ResourceSettings settings) {
+        int idleTimeout = settings.getInt(SETTING_IDLE_TIMEOUT, -1);
+        if (idleTimeout < 0) {
+            idleTimeout = getCredentialIdleTimeout(settings.getService());
+        }
+        if (idleTimeout < 0) {
+            idleTimeout = serverIdleTimeout;
+        }
+
+        final int networkIdleTimeout = settings.getInt(SETTING_NETWORK_IDLE_TIMEOUT, NETWORK_IDLE_TIMEOUT);
+        if (networkIdleTimeout > 0 && (idleTimeout <= 0 || networkIdleTimeout < idleTimeout)) {
+            idleTimeout = networkIdleTimeout;
+        }
+
+        return new EvictionProfile(idleTimeout, Math.max(0, settings.getInt(SETTING_MAX_AGE, MAX_AGE)));
+    }
+
+    /**
+     * @return The time after which idle connections are dropped in milliseconds, <code>0</code> if they are never dropped
+     */
+    int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return The time after which idle connections are evicted in milliseconds, <code>-1</code> if they do not need to be evicted
+     */
+    int getMinEvictableIdleTime() {
+        return idleTimeout > 0 ? idleTimeout / 2 : -1;
+    }
+
+    /**
+     * @return The interval between runs of the evictor in milliseconds, <code>-1</code> if idle connections do not need to be evicted
+     */
+    int getTimeBetweenEvictionRuns() {
+        return idleTimeout > 0 ? Math.max(1, Math.min(idleTimeout / 4, MAX_EVICTION_RUN_INTERVAL)) : -1;
+    }
+
+    /**
+     * @return The time after which connections are recycled in milliseconds, <code>0</code> if they are never recycled
+     */
+    int getMaxAge() {
+        return maxAge;
+    }
+
+    private static int getCredentialIdleTimeout(VcapService service) {
+        if (service == null) {
+            return -1;
+        }
+
+        for (String credential : IDLE_TIMEOUT_CREDENTIALS) {
+            final String value = service.getCredential(credential);
+            if (value != null && !value.trim().isEmpty()) {
+                try {
+                    final long seconds = Long.parseLong(value.trim());
+                    return (int) Math.max(-1, Math.min(seconds, Integer.MAX_VALUE / 1000) * 1000);
+                } catch (NumberFormatException e) {
+                    throw new ConfigurationException("Credential " + credential + " must be an integer: " + value, e);
+                }
+            }
+        }
+        return -1;
+    }
+}
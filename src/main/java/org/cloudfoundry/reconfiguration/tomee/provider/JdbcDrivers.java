@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The JDBC drivers visible to a classloader. The drivers declared in <code>META-INF/services/java.sql.Driver</code> are read once per classloader, drivers that are not declared
+ * are looked up once and the outcome is kept. Classloaders are weakly referenced, so the drivers of undeployed applications do not leak.
+ */
+final class JdbcDrivers {
+
+    static final String SERVICES_RESOURCE = "META-INF/services/java.sql.Driver";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Logger logger = Logger.getLogger(JdbcDrivers.class.getName());
+
+    private static final Map<ClassLoader, JdbcDrivers> cache = new WeakHashMap<>();
+
+    private final WeakReference<ClassLoader> classLoader;
+
+    private final Set<String> declaredDrivers;
+
+    private final ConcurrentMap<String, Boolean> undeclaredDrivers = new ConcurrentHashMap<>();
+
+    private JdbcDrivers(ClassLoader classLoader, Set<String> declaredDrivers) {
+        this.classLoader = new WeakReference<>(classLoader);
+        this.declaredDrivers = declaredDrivers;
+    }
+
+    /**
+     * @return The drivers visible to the classloader, or to the classloader of this library if it is <code>null</code>
+     */
+    static JdbcDrivers getInstance(ClassLoader classLoader) {
+        final ClassLoader loader = classLoader == null ? JdbcDrivers.class.getClassLoader() : classLoader;
+        synchronized (cache) {
+            JdbcDrivers drivers = cache.get(loader);
+            if (drivers == null) {
+                drivers = new JdbcDrivers(loader, scan(loader));
+                cache.put(loader, drivers);
+            }
+            return drivers;
+        }
+    }
+
+    /**
+     * @return The first of the candidate driver classes that is available, or <code>null</code> if none is
+     */
+    String find(String... candidates) {
+        for (String candidate : candidates) {
+            if (isAvailable(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    boolean isAvailable(String driver) {
+        if (declaredDrivers.contains(driver)) {
+            return true;
+        }
+
+        Boolean available = undeclaredDrivers.get(driver);
+        if (available == null) {
+            available = load(driver);
+            undeclaredDrivers.putIfAbsent(driver, available);
+        }
+        return available;
+    }
+
+    Set<String> getDeclaredDrivers() {
+        return declaredDrivers;
+    }
+
+    /**
+     * Drivers that predate JDBC 4 do not declare themselves as a service
+     */
+    private boolean load(String driver) {
+        final ClassLoader loader = classLoader.get();
+        if (loader == null || loader.getResource(driver.replace('.', '/') + ".class") == null) {
+            return false;
+        }
+        try {
+            Class.forName(driver, false, loader);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Cannot load JDBC driver " + driver, e);
+            }
+            return false;
+        }
+    }
+
+    private static Set<String> scan(ClassLoader classLoader) {
+        final Set<String> drivers = new HashSet<>();
+        try {
+            final Enumeration<URL> resources = classLoader.getResources(SERVICES_RESOURCE);
+            while (resources.hasMoreElements()) {
+                final URL resource = resources.nextElement();
+                try {
+                    read(resource, drivers);
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Cannot read JDBC drivers declared in " + resource, e);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot list JDBC drivers declared in " + SERVICES_RESOURCE, e);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("JDBC drivers declared to " + classLoader + ": " + drivers);
+        }
+        return Collections.unmodifiableSet(drivers);
+    }
+
+    private static void read(URL resource, Set<String> drivers) throws IOException {
+        try (InputStream in = resource.openStream(); BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int comment = line.indexOf('#');
+                final String driver = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!driver.isEmpty()) {
+                    drivers.add(driver);
+                }
+            }
+        }
+    }
+}
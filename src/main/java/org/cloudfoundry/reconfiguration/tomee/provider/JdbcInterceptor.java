@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The interceptors of the tomcat-jdbc pool added to a relational resource, selected with the <code>jdbc-interceptors</code> setting.
+ *
+ * @see RelationalServicePropertiesProvider
+ */
+public enum JdbcInterceptor {
+
+    /**
+     * Cache the auto-commit, read-only, isolation and catalog state of connections, so that resetting them to the defaults of the pool on borrow does not reach the database
+     * when they did not change
+     */
+    CONNECTION_STATE("connection-state", "ConnectionState"),
+
+    /**
+     * Cache the prepared statements of each connection
+     */
+    STATEMENT_CACHE("statement-cache", "StatementCache"),
+
+    /**
+     * Set a query timeout on every statement
+     */
+    QUERY_TIMEOUT("query-timeout", "QueryTimeoutInterceptor"),
+
+    /**
+     * Log the queries slower than a threshold and report them as JMX notifications of the pool
+     */
+    SLOW_QUERY_REPORT("slow-query-report", "SlowQueryReportJmx");
+
+    /**
+     * Value of the <code>jdbc-interceptors</code> setting disabling the interceptors
+     */
+    static final String NONE = "none";
+
+    private final String name;
+
+    private final String interceptorClass;
+
+    JdbcInterceptor(String name, String interceptorClass) {
+        this.name = name;
+        this.interceptorClass = interceptorClass;
+    }
+
+    /**
+     * Parse a comma separated list of interceptors
+     *
+     * @return The interceptors in order, empty for {@value #NONE}
+     * @throws ConfigurationException In case the list contains an unknown interceptor
+     */
+    public static List<JdbcInterceptor> of(String value) {
+        if (NONE.equalsIgnoreCase(value.trim())) {
+            return Collections.emptyList();
+        }
+
+        final List<JdbcInterceptor> interceptors = new ArrayList<>();
+        for (String name : value.split(",")) {
+            final String trimmed = name.trim().toLowerCase(Locale.ENGLISH);
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final JdbcInterceptor interceptor = find(trimmed);
+            if (interceptor == null) {
+                throw new ConfigurationException("Unsupported JDBC interceptor: " + name.trim());
+            }
+            if (!interceptors.contains(interceptor)) {
+                interceptors.add(interceptor);
+            }
+        }
+        return interceptors;
+    }
+
+    private static JdbcInterceptor find(String name) {
+        for (JdbcInterceptor interceptor : values()) {
+            if (interceptor.name.equals(name)) {
+                return interceptor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The class of the interceptor, relative to the <code>org.apache.tomcat.jdbc.pool.interceptor</code> package as accepted by the <code>jdbcInterceptors</code> property of
+     * the pool
+     */
+    String getInterceptorClass() {
+        return interceptorClass;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
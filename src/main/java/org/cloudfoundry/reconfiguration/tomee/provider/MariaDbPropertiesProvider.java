@@ -18,24 +18,78 @@ package org.cloudfoundry.reconfiguration.tomee.provider;
 
 import org.springframework.cloud.service.common.RelationalServiceInfo;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 public final class MariaDbPropertiesProvider extends RelationalServicePropertiesProvider {
 
-    private static final String JDBC_DRIVER_CLASS = "org.mariadb.jdbc.Driver";
+    static final String JDBC_DRIVER_CLASS = "org.mariadb.jdbc.Driver";
+
+    /**
+     * Ahead of {@link MySqlProperiesProvider}, which configures the MariaDB driver as well
+     */
+    private static final int PRIORITY = 100;
 
     private static final String JDBC_SCHEMA = "jdbc:mariadb:";
 
+    private static final String JDBC_LOAD_BALANCE_SCHEMA = "jdbc:mariadb:loadbalance:";
+
+    private static final String JDBC_REPLICATION_SCHEMA = "jdbc:mariadb:replication:";
+
     private static final String VALIDATION_QUERY = "SELECT 1";
 
+    /**
+     * Default <code>wait_timeout</code> of the server
+     */
+    private static final int SERVER_IDLE_TIMEOUT = 28800000;
+
+    /**
+     * Throughput profile of the MariaDB driver: server prepared statements cached by the driver, and batches sent with the bulk protocol of MariaDB in a single round trip. The
+     * driver tracks the auto-commit and read-only state of a session from the status of the server, so no setting is needed to skip redundant round trips.
+     */
+    private static final Map<String, String> THROUGHPUT = connectionProperties(
+            "useServerPrepStmts", "true",
+            "cachePrepStmts", "true",
+            "prepStmtCacheSize", "250",
+            "prepStmtCacheSqlLimit", "2048",
+            "useBulkStmts", "true");
+
     @Override
     protected void configure(RelationalServiceInfo serviceInfo, Properties properties) {
-        properties.setProperty(PROPERTY_JDBC_DRIVER, JDBC_DRIVER_CLASS);
-        properties.setProperty(PROPERTY_VALIDATION_QUERY, VALIDATION_QUERY);
+        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriver(serviceInfo, JDBC_DRIVER_CLASS));
+    }
+
+    @Override
+    protected String getValidationQuery() {
+        return VALIDATION_QUERY;
+    }
+
+    @Override
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return THROUGHPUT;
+    }
+
+    @Override
+    protected int getServerIdleTimeout() {
+        return SERVER_IDLE_TIMEOUT;
+    }
+
+    /**
+     * The primary resource uses a replication URL, which sends the connections set read-only to the replicas. The read-only resource balances its connections over the replicas.
+     */
+    @Override
+    protected String getMultiHostJdbcUrl(String jdbcUrl, List<String> hosts, boolean readOnly) {
+        return ReplicaHosts.withHosts(jdbcUrl, readOnly ? JDBC_LOAD_BALANCE_SCHEMA : JDBC_REPLICATION_SCHEMA, hosts);
     }
 
     @Override
     protected String getJdbcSchema() {
         return JDBC_SCHEMA;
     }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ContainerResources;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+import org.cloudfoundry.reconfiguration.tomee.VcapServicesSnapshot;
+import org.cloudfoundry.reconfiguration.tomee.spi.SchemeAwarePropertiesProvider;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Base class of the providers configuring pooled JMS connection factories, declared as <code>jms/&lt;service name&gt;</code> resources. Spring Cloud Connectors bind message
+ * brokers other than RabbitMQ as plain services, so the broker is recognized from the <code>VCAP_SERVICES</code> entry of the service. The sessions of each pooled connection are
+ * sized from the resources of the container, as the connection pools of relational resources are.
+ *
+ * @see ConnectionPoolSizing
+ */
+public abstract class MessageBrokerPropertiesProvider implements SchemeAwarePropertiesProvider {
+
+    private final EnvironmentAccessor environment;
+
+    protected MessageBrokerPropertiesProvider() {
+        this(new EnvironmentAccessor());
+    }
+
+    protected MessageBrokerPropertiesProvider(EnvironmentAccessor environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Message brokers are not reached through JDBC URLs, they are recognized through {@link #canProvide(ServiceInfo)} only
+     */
+    @Override
+    public Collection<String> getSchemes() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public int getPriority() {
+        return DEFAULT_PRIORITY;
+    }
+
+    @Override
+    public boolean canProvide(ServiceInfo serviceInfo) {
+        final VcapService service = getVcapService(serviceInfo);
+        return service != null && accept(service);
+    }
+
+    @Override
+    public final Properties provide(ServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final VcapService service = getVcapService(serviceInfo);
+        if (service == null || !accept(service)) {
+            throw new ConfigurationException("Cannot provide properties for: " + serviceInfo);
+        }
+
+        configure(service, defaultConfiguration);
+        return defaultConfiguration;
+    }
+
+    /**
+     * Check if the service is a broker this provider supports
+     */
+    protected abstract boolean accept(VcapService service);
+
+    protected abstract void configure(VcapService service, Properties properties);
+
+    /**
+     * Get the maximum number of sessions of a pooled connection, derived from the resources of the container unless the <code>max-active</code> or <code>pool-sizing</code> settings
+     * are set. The settings are removed from the properties.
+     */
+    protected final int getMaxSessions(VcapService service, Properties properties) {
+        final ResourceSettings settings = new ResourceSettings(properties, service);
+        return new ConnectionPoolSizing(ContainerResources.getInstance()).getMaxActive(service.getName(), settings);
+    }
+
+    /**
+     * @return The first of the credentials that is set, or <code>null</code> if none is set
+     */
+    protected static String getCredential(VcapService service, String... keys) {
+        for (String key : keys) {
+            final String value = service.getCredential(key);
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the label or a tag of the service contains one of the markers, ignoring case
+     */
+    protected static boolean hasMarker(VcapService service, String... markers) {
+        for (String marker : markers) {
+            if (service.getLabel() != null && service.getLabel().toLowerCase(Locale.ENGLISH).contains(marker)) {
+                return true;
+            }
+            for (String tag : service.getTags()) {
+                if (tag.toLowerCase(Locale.ENGLISH).contains(marker)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the <code>VCAP_SERVICES</code> entry of a bound service
+     *
+     * @return The entry of the service or <code>null</code> if the service is not bound through <code>VCAP_SERVICES</code>
+     */
+    protected VcapService getVcapService(ServiceInfo serviceInfo) {
+        return VcapServicesSnapshot.getInstance(environment, null).getServiceByName(serviceInfo.getId());
+    }
+}
@@ -16,25 +16,86 @@
 
 package org.cloudfoundry.reconfiguration.tomee.provider;
 
-import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
 import org.springframework.cloud.service.common.RelationalServiceInfo;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 
 public final class MySqlProperiesProvider extends RelationalServicePropertiesProvider {
 
     private static final String[] JDBC_DRIVER_CLASSES =
-            new String[] { "org.mariadb.jdbc.Driver", "com.mysql.jdbc.Driver" };
+            new String[] { MariaDbPropertiesProvider.JDBC_DRIVER_CLASS, "com.mysql.jdbc.Driver" };
+
+    private static final int PRIORITY = 200;
 
     private static final String JDBC_SCHEMA = "jdbc:mysql:";
 
+    private static final String JDBC_LOAD_BALANCE_SCHEMA = "jdbc:mysql:loadbalance:";
+
+    private static final String JDBC_REPLICATION_SCHEMA = "jdbc:mysql:replication:";
+
     private static final String VALIDATION_QUERY = "SELECT 1";
 
+    /**
+     * Default <code>wait_timeout</code> of the server
+     */
+    private static final int SERVER_IDLE_TIMEOUT = 28800000;
+
+    /**
+     * Throughput profile of MySQL Connector/J: server prepared statements cached by the driver, batched inserts rewritten as multi-row inserts, and the auto-commit, read-only
+     * and isolation state of a session tracked by the driver instead of queried or set again on the server
+     */
+    private static final Map<String, String> CONNECTOR_J_THROUGHPUT = connectionProperties(
+            "useServerPrepStmts", "true",
+            "cachePrepStmts", "true",
+            "prepStmtCacheSize", "250",
+            "prepStmtCacheSqlLimit", "2048",
+            "rewriteBatchedStatements", "true",
+            "useLocalSessionState", "true",
+            "useLocalTransactionState", "true",
+            "elideSetAutoCommits", "true",
+            "cacheServerConfiguration", "true",
+            "cacheResultSetMetadata", "true",
+            "maintainTimeStats", "false");
+
+    /**
+     * Throughput profile of the MariaDB driver connected to MySQL, which lacks the bulk protocol of MariaDB: batched inserts are rewritten as multi-row inserts, which the driver
+     * sends as text statements, so the client side prepared statements are cached
+     */
+    private static final Map<String, String> MARIADB_DRIVER_THROUGHPUT = connectionProperties(
+            "cachePrepStmts", "true",
+            "prepStmtCacheSize", "250",
+            "prepStmtCacheSqlLimit", "2048",
+            "rewriteBatchedStatements", "true");
+
     @Override
     protected void configure(RelationalServiceInfo serviceInfo, Properties properties) {
-        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriverClass(serviceInfo));
-        properties.setProperty(PROPERTY_VALIDATION_QUERY, VALIDATION_QUERY);
+        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriver(serviceInfo, JDBC_DRIVER_CLASSES));
+    }
+
+    @Override
+    protected String getValidationQuery() {
+        return VALIDATION_QUERY;
+    }
+
+    @Override
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return MariaDbPropertiesProvider.JDBC_DRIVER_CLASS.equals(jdbcDriver) ? MARIADB_DRIVER_THROUGHPUT : CONNECTOR_J_THROUGHPUT;
+    }
+
+    @Override
+    protected int getServerIdleTimeout() {
+        return SERVER_IDLE_TIMEOUT;
+    }
+
+    /**
+     * The primary resource uses a replication URL, which sends the connections set read-only to the replicas. The read-only resource balances its connections over the replicas.
+     */
+    @Override
+    protected String getMultiHostJdbcUrl(String jdbcUrl, List<String> hosts, boolean readOnly) {
+        return ReplicaHosts.withHosts(jdbcUrl, readOnly ? JDBC_LOAD_BALANCE_SCHEMA : JDBC_REPLICATION_SCHEMA, hosts);
     }
 
     @Override
@@ -42,14 +103,8 @@ public final class MySqlProperiesProvider extends RelationalServicePropertiesPro
         return JDBC_SCHEMA;
     }
 
-    private String getJdbcDriverClass(RelationalServiceInfo serviceInfo) {
-        for (String driver : JDBC_DRIVER_CLASSES) {
-            try {
-                Thread.currentThread().getContextClassLoader().loadClass(driver);
-                return driver;
-            } catch (ClassNotFoundException ignore) {
-            }
-        }
-        throw new ConfigurationException("Cannot find suitable driver for " + serviceInfo);
+    @Override
+    public int getPriority() {
+        return PRIORITY;
     }
 }
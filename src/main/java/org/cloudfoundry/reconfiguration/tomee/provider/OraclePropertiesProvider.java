@@ -18,6 +18,7 @@ package org.cloudfoundry.reconfiguration.tomee.provider;
 
 import org.springframework.cloud.service.common.RelationalServiceInfo;
 
+import java.util.Map;
 import java.util.Properties;
 
 
@@ -25,18 +26,44 @@ public final class OraclePropertiesProvider extends RelationalServicePropertiesP
 
     private static final String JDBC_DRIVER_CLASS = "oracle.jdbc.OracleDriver";
 
+    private static final int PRIORITY = 600;
+
     private static final String JDBC_SCHEMA = "jdbc:oracle:";
 
     private static final String VALIDATION_QUERY = "SELECT 'Y' from dual";
 
+    /**
+     * Throughput profile of the Oracle driver: the implicit statement cache of each connection, disabled by default, is enabled, and rows are prefetched by 100 instead of 10
+     * per round trip. Connecting times out after 10 seconds and reading from a hung socket after 5 minutes, in milliseconds.
+     */
+    private static final Map<String, String> THROUGHPUT = connectionProperties(
+            "oracle.jdbc.implicitStatementCacheSize", "100",
+            "defaultRowPrefetch", "100",
+            "oracle.net.CONNECT_TIMEOUT", "10000",
+            "oracle.jdbc.ReadTimeout", "300000");
+
     @Override
     protected void configure(RelationalServiceInfo serviceInfo, Properties properties) {
-        properties.setProperty(PROPERTY_JDBC_DRIVER, JDBC_DRIVER_CLASS);
-        properties.setProperty(PROPERTY_VALIDATION_QUERY, VALIDATION_QUERY);
+        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriver(serviceInfo, JDBC_DRIVER_CLASS));
+    }
+
+    @Override
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return THROUGHPUT;
+    }
+
+    @Override
+    protected String getValidationQuery() {
+        return VALIDATION_QUERY;
     }
 
     @Override
     protected String getJdbcSchema() {
         return JDBC_SCHEMA;
     }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
 }
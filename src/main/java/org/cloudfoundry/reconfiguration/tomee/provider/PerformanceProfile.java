@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+
+import java.util.Locale;
+
+/**
+ * The tuning of the JDBC driver of a relational resource, selected with the <code>performance-profile</code> setting. A profile adds connection properties of the driver to
+ * the <code>ConnectionProperties</code> of the resource, which keep precedence over it.
+ *
+ * @see RelationalServicePropertiesProvider
+ */
+public enum PerformanceProfile {
+
+    /**
+     * The defaults of the driver
+     */
+    DEFAULT,
+
+    /**
+     * Connection properties of the driver favoring throughput: prepared statement caching, batched statements sent in fewer round trips and session state tracked by the
+     * driver instead of queried or reset on the server.
+     */
+    THROUGHPUT;
+
+    /**
+     * @throws ConfigurationException In case the value is not a performance profile
+     */
+    public static PerformanceProfile of(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Unsupported performance profile: " + value, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * The connection pool backing a relational resource, selected with the <code>pool-implementation</code> setting. The values are the <code>DataSourceCreator</code> names of
+ * TomEE.
+ *
+ * @see RelationalServicePropertiesProvider
+ */
+public enum PoolImplementation {
+
+    /**
+     * The tomcat-jdbc pool, default of TomEE
+     */
+    TOMCAT("tomcat"),
+
+    /**
+     * The commons-dbcp2 pool
+     */
+    DBCP("dbcp"),
+
+    /**
+     * The commons-dbcp2 pool, with the transaction handling of TomEE
+     */
+    DBCP_ALTERNATIVE("dbcp-alternative");
+
+    /**
+     * Property of the resource selecting the pool
+     */
+    static final String PROPERTY_DATA_SOURCE_CREATOR = "DataSourceCreator";
+
+    /**
+     * Names of the tomcat-jdbc properties emitted by the providers, and of their commons-dbcp2 counterparts. A <code>null</code> counterpart means that the property is not
+     * supported by commons-dbcp2.
+     */
+    private static final String[][] DBCP_PROPERTIES = new String[][] {
+            { RelationalServicePropertiesProvider.PROPERTY_MAX_ACTIVE, "maxTotal" },
+            { RelationalServicePropertiesProvider.PROPERTY_MAX_WAIT, "maxWaitMillis" },
+            { RelationalServicePropertiesProvider.PROPERTY_MAX_AGE, "maxConnLifetimeMillis" }
+    };
+
+    private static final String PROPERTY_NUM_TESTS_PER_EVICTION_RUN = "numTestsPerEvictionRun";
+
+    private final String dataSourceCreator;
+
+    PoolImplementation(String dataSourceCreator) {
+        this.dataSourceCreator = dataSourceCreator;
+    }
+
+    /**
+     * @throws ConfigurationException In case the value is not a supported pool implementation
+     */
+    public static PoolImplementation of(String value) {
+        final PoolImplementation poolImplementation = find(value);
+        if (poolImplementation == null) {
+            throw new ConfigurationException("Unsupported pool implementation: " + value);
+        }
+        return poolImplementation;
+    }
+
+    /**
+     * @return The pool implementation or <code>null</code> if the value is not a supported pool implementation
+     */
+    static PoolImplementation find(String value) {
+        final String name = value.trim().toLowerCase(Locale.ENGLISH);
+        for (PoolImplementation poolImplementation : values()) {
+            if (poolImplementation.dataSourceCreator.equals(name)) {
+                return poolImplementation;
+            }
+        }
+        return "dbcp2".equals(name) ? DBCP : null;
+    }
+
+    public String getDataSourceCreator() {
+        return dataSourceCreator;
+    }
+
+    /**
+     * The name this pool expects for a tomcat-jdbc property emitted by the providers
+     */
+    String getPropertyName(String name) {
+        if (this != TOMCAT) {
+            for (String[] names : DBCP_PROPERTIES) {
+                if (names[0].equals(name)) {
+                    return names[1];
+                }
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Rename the pool properties emitted by the providers to the names expected by this pool. Properties already set under the name expected by the pool are kept.
+     * <p>
+     * commons-dbcp2 has no validation interval: a validation on borrow would run on every borrow, so connections validated at most once per interval are validated by the
+     * evictor instead, at least once per interval, and all idle connections are tested on each run rather than the first three.
+     */
+    void translate(Properties properties) {
+        if (this == TOMCAT) {
+            return;
+        }
+
+        for (String[] names : DBCP_PROPERTIES) {
+            final String value = (String) properties.remove(names[0]);
+            if (value != null && properties.getProperty(names[1]) == null) {
+                properties.setProperty(names[1], value);
+            }
+        }
+
+        final String validationInterval = (String) properties.remove(RelationalServicePropertiesProvider.PROPERTY_VALIDATION_INTERVAL);
+        if (validationInterval != null) {
+            properties.setProperty(RelationalServicePropertiesProvider.PROPERTY_TEST_ON_BORROW, "false");
+            properties.setProperty(RelationalServicePropertiesProvider.PROPERTY_TEST_WHILE_IDLE, "true");
+            final long interval = toLong(validationInterval);
+            final long timeBetweenEvictionRuns = toLong(properties.getProperty(RelationalServicePropertiesProvider.PROPERTY_TIME_BETWEEN_EVICTION_RUNS_MILLIS));
+            if (interval > 0 && (timeBetweenEvictionRuns <= 0 || timeBetweenEvictionRuns > interval)) {
+                properties.setProperty(RelationalServicePropertiesProvider.PROPERTY_TIME_BETWEEN_EVICTION_RUNS_MILLIS, Long.toString(interval));
+            }
+        }
+        if (Boolean.parseBoolean(properties.getProperty(RelationalServicePropertiesProvider.PROPERTY_TEST_WHILE_IDLE))
+                && properties.getProperty(PROPERTY_NUM_TESTS_PER_EVICTION_RUN) == null) {
+            properties.setProperty(PROPERTY_NUM_TESTS_PER_EVICTION_RUN, "-1");
+        }
+    }
+
+    private static long toLong(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return dataSourceCreator;
+    }
+}
@@ -18,6 +18,8 @@ package org.cloudfoundry.reconfiguration.tomee.provider;
 
 import org.springframework.cloud.service.common.RelationalServiceInfo;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 
@@ -25,20 +27,63 @@ public final class PostgreSqlProperiesProvider extends RelationalServiceProperti
 
     private static final String JDBC_DRIVER_CLASS = "org.postgresql.Driver";
 
+    private static final int PRIORITY = 300;
+
     private static final String JDBC_SCHEMA = "jdbc:postgresql:";
 
     private static final String VALIDATION_QUERY = "SELECT 1";
 
+    /**
+     * Throughput profile of the PostgreSQL driver: batched inserts rewritten as multi-row inserts, statements prepared on the server from their third execution and cached per
+     * connection, results fetched by chunks of rows instead of all at once when auto-commit is off, and connections kept alive by TCP while a hung socket is given up after five
+     * minutes. Timeouts are in seconds.
+     */
+    private static final Map<String, String> THROUGHPUT = connectionProperties(
+            "reWriteBatchedInserts", "true",
+            "prepareThreshold", "3",
+            "preparedStatementCacheQueries", "512",
+            "preparedStatementCacheSizeMiB", "10",
+            "defaultRowFetchSize", "1000",
+            "tcpKeepAlive", "true",
+            "connectTimeout", "10",
+            "socketTimeout", "300");
+
     @Override
     protected void configure(RelationalServiceInfo serviceInfo, Properties properties) {
-        properties.setProperty(PROPERTY_JDBC_DRIVER, JDBC_DRIVER_CLASS);
-        properties.setProperty(PROPERTY_VALIDATION_QUERY, VALIDATION_QUERY);
+        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriver(serviceInfo, JDBC_DRIVER_CLASS));
+    }
+
+    @Override
+    protected String getValidationQuery() {
+        return VALIDATION_QUERY;
+    }
+
+    @Override
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return THROUGHPUT;
+    }
+
+    /**
+     * Hosts are tried in order. The primary resource connects to the host accepting writes, the read-only resource spreads its connections over the replicas.
+     */
+    @Override
+    protected String getMultiHostJdbcUrl(String jdbcUrl, List<String> hosts, boolean readOnly) {
+        final String multiHostJdbcUrl = ReplicaHosts.withHosts(jdbcUrl, null, hosts);
+        if (readOnly) {
+            return ReplicaHosts.withParameter(ReplicaHosts.withParameter(multiHostJdbcUrl, "targetServerType", "preferSecondary"), "loadBalanceHosts", "true");
+        }
+        return ReplicaHosts.withParameter(multiHostJdbcUrl, "targetServerType", "master");
     }
 
     @Override
     protected String getJdbcSchema() {
         return JDBC_SCHEMA;
     }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
 }
 
 
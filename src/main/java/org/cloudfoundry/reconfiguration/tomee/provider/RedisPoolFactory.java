@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Factory of the <code>redis.clients.jedis.JedisPool</code> shared by an application, declared as a TomEE resource with <code>create</code> as factory method:
+ * <pre>
+ * &lt;Resource id="redis/my-cache" class-name="org.cloudfoundry.reconfiguration.tomee.provider.RedisPoolFactory" factory-name="create"
+ *           properties-provider="org.cloudfoundry.reconfiguration.tomee.DelegatingPropertiesProvider"/&gt;
+ * </pre>
+ * TomEE sets the properties of the resource through the setters of the factory before calling <code>create</code>. Jedis is provided by the application, so it is loaded through
+ * the context class loader rather than the class loader of TomEE.
+ *
+ * @see RedisPropertiesProvider
+ */
+public final class RedisPoolFactory {
+
+    private static final String POOL_CLASS = "redis.clients.jedis.JedisPool";
+
+    private static final String POOL_CONFIG_CLASS = "redis.clients.jedis.JedisPoolConfig";
+
+    private static final String GENERIC_POOL_CONFIG_CLASS = "org.apache.commons.pool2.impl.GenericObjectPoolConfig";
+
+    private String host = "localhost";
+
+    private int port = 6379;
+
+    private String password;
+
+    private int database;
+
+    private boolean ssl;
+
+    private String clientName;
+
+    private int connectionTimeout = 2000;
+
+    private int soTimeout = 2000;
+
+    private int maxTotal = 8;
+
+    private int maxIdle = 8;
+
+    private int minIdle;
+
+    private long maxWaitMillis = -1;
+
+    private boolean testWhileIdle = true;
+
+    private long timeBetweenEvictionRunsMillis = -1;
+
+    private long minEvictableIdleTimeMillis = -1;
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public void setDatabase(int database) {
+        this.database = database;
+    }
+
+    public void setSsl(boolean ssl) {
+        this.ssl = ssl;
+    }
+
+    public void setClientName(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public void setConnectionTimeout(int connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public void setSoTimeout(int soTimeout) {
+        this.soTimeout = soTimeout;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public void setTestWhileIdle(boolean testWhileIdle) {
+        this.testWhileIdle = testWhileIdle;
+    }
+
+    public void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+    }
+
+    public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+        this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+    }
+
+    /**
+     * Create the pool of the resource
+     *
+     * @return The <code>JedisPool</code>
+     * @throws ConfigurationException If Jedis is not available to the application
+     */
+    public Object create() {
+        final ClassLoader loader = getClassLoader();
+        try {
+            final Class<?> poolConfigClass = Class.forName(POOL_CONFIG_CLASS, true, loader);
+            final Object poolConfig = poolConfigClass.getConstructor().newInstance();
+            invoke(poolConfig, "setMaxTotal", int.class, maxTotal);
+            invoke(poolConfig, "setMaxIdle", int.class, maxIdle);
+            invoke(poolConfig, "setMinIdle", int.class, minIdle);
+            invoke(poolConfig, "setMaxWaitMillis", long.class, maxWaitMillis);
+            invoke(poolConfig, "setTestWhileIdle", boolean.class, testWhileIdle);
+            invoke(poolConfig, "setTimeBetweenEvictionRunsMillis", long.class, timeBetweenEvictionRunsMillis);
+            invoke(poolConfig, "setMinEvictableIdleTimeMillis", long.class, minEvictableIdleTimeMillis);
+
+            final Class<?> genericPoolConfigClass = Class.forName(GENERIC_POOL_CONFIG_CLASS, false, poolConfigClass.getClassLoader());
+            return Class.forName(POOL_CLASS, true, loader)
+                    .getConstructor(genericPoolConfigClass, String.class, int.class, int.class, int.class, String.class, int.class, String.class, boolean.class)
+                    .newInstance(poolConfig, host, port, connectionTimeout, soTimeout, password, database, clientName, ssl);
+        } catch (ClassNotFoundException e) {
+            throw new ConfigurationException("Jedis is not available to the application, add it to WEB-INF/lib: " + e.getMessage());
+        } catch (InvocationTargetException e) {
+            throw new ConfigurationException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new ConfigurationException(e);
+        }
+    }
+
+    private static void invoke(Object target, String name, Class<?> parameterType, Object value) throws ReflectiveOperationException {
+        final Method method = target.getClass().getMethod(name, parameterType);
+        method.invoke(target, value);
+    }
+
+    private static ClassLoader getClassLoader() {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return loader != null ? loader : RedisPoolFactory.class.getClassLoader();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ContainerResources;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+import org.cloudfoundry.reconfiguration.tomee.VcapServicesSnapshot;
+import org.cloudfoundry.reconfiguration.tomee.spi.SchemeAwarePropertiesProvider;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Configures the {@link RedisPoolFactory} of a Redis service, declared as a <code>redis/&lt;service name&gt;</code> resource. The connection details are read from the
+ * <code>uri</code> credential (<code>rediss</code> for TLS) or from the <code>host</code>, <code>port</code> and <code>password</code> credentials. The pool is sized from the
+ * resources of the container like the connection pools of relational resources, and idle connections are evicted before the network drops them.
+ *
+ * @see ConnectionPoolSizing
+ * @see EvictionProfile
+ */
+public final class RedisPropertiesProvider implements SchemeAwarePropertiesProvider {
+
+    static final String PROPERTY_HOST = "host";
+
+    static final String PROPERTY_PORT = "port";
+
+    static final String PROPERTY_PASSWORD = "password";
+
+    static final String PROPERTY_DATABASE = "database";
+
+    static final String PROPERTY_SSL = "ssl";
+
+    static final String PROPERTY_CONNECTION_TIMEOUT = "connectionTimeout";
+
+    static final String PROPERTY_SO_TIMEOUT = "soTimeout";
+
+    static final String PROPERTY_MAX_TOTAL = "maxTotal";
+
+    static final String PROPERTY_MAX_IDLE = "maxIdle";
+
+    static final String PROPERTY_MAX_WAIT = "maxWaitMillis";
+
+    static final String PROPERTY_TEST_WHILE_IDLE = "testWhileIdle";
+
+    static final String PROPERTY_TIME_BETWEEN_EVICTION_RUNS = "timeBetweenEvictionRunsMillis";
+
+    static final String PROPERTY_MIN_EVICTABLE_IDLE_TIME = "minEvictableIdleTimeMillis";
+
+    private static final int PRIORITY = 800;
+
+    private static final String[] MARKERS = new String[] { "redis" };
+
+    private static final String[] HOST_CREDENTIALS = new String[] { "host", "hostname" };
+
+    private static final String[] URI_CREDENTIALS = new String[] { "uri", "url" };
+
+    private static final String SCHEME = "redis";
+
+    private static final String SCHEME_SSL = "rediss";
+
+    private static final int DEFAULT_PORT = 6379;
+
+    private static final String TIMEOUT = "2000";
+
+    private static final String MAX_WAIT = "30000";
+
+    private static final Logger logger = Logger.getLogger(RedisPropertiesProvider.class.getName());
+
+    private final EnvironmentAccessor environment;
+
+    public RedisPropertiesProvider() {
+        this(new EnvironmentAccessor());
+    }
+
+    RedisPropertiesProvider(EnvironmentAccessor environment) {
+        this.environment = environment;
+    }
+
+    /**
+     * Redis services are not reached through JDBC URLs, they are recognized through {@link #canProvide(ServiceInfo)} only
+     */
+    @Override
+    public Collection<String> getSchemes() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
+
+    /**
+     * A Redis service is tagged or labeled as such, or lists a <code>redis</code> or <code>rediss</code> URI
+     */
+    @Override
+    public boolean canProvide(ServiceInfo serviceInfo) {
+        final VcapService service = getVcapService(serviceInfo);
+        return service != null && (MessageBrokerPropertiesProvider.hasMarker(service, MARKERS) || getUri(service) != null);
+    }
+
+    @Override
+    public Properties provide(ServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final VcapService service = getVcapService(serviceInfo);
+        if (service == null || !canProvide(serviceInfo)) {
+            throw new ConfigurationException("Cannot provide properties for: " + serviceInfo);
+        }
+
+        final URI uri = getUri(service);
+        if (uri != null) {
+            defaultConfiguration.setProperty(PROPERTY_HOST, uri.getHost());
+            defaultConfiguration.setProperty(PROPERTY_PORT, Integer.toString(uri.getPort() == -1 ? DEFAULT_PORT : uri.getPort()));
+            final String password = getPassword(uri);
+            if (password != null) {
+                defaultConfiguration.setProperty(PROPERTY_PASSWORD, password);
+            }
+            final String path = uri.getPath();
+            if (path != null && path.length() > 1) {
+                defaultConfiguration.setProperty(PROPERTY_DATABASE, path.substring(1));
+            }
+            defaultConfiguration.setProperty(PROPERTY_SSL, Boolean.toString(SCHEME_SSL.equals(uri.getScheme())));
+        } else {
+            final String host = MessageBrokerPropertiesProvider.getCredential(service, HOST_CREDENTIALS);
+            if (host == null) {
+                throw new ConfigurationException("No host in the credentials of " + service.getName());
+            }
+            defaultConfiguration.setProperty(PROPERTY_HOST, host);
+            final String port = MessageBrokerPropertiesProvider.getCredential(service, PROPERTY_PORT);
+            defaultConfiguration.setProperty(PROPERTY_PORT, port == null ? Integer.toString(DEFAULT_PORT) : port);
+            final String password = MessageBrokerPropertiesProvider.getCredential(service, PROPERTY_PASSWORD);
+            if (password != null) {
+                defaultConfiguration.setProperty(PROPERTY_PASSWORD, password);
+            }
+        }
+
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, service);
+        if (defaultConfiguration.getProperty(PROPERTY_MAX_TOTAL) == null) {
+            final int maxTotal = new ConnectionPoolSizing(ContainerResources.getInstance()).getMaxActive(service.getName(), settings);
+            defaultConfiguration.setProperty(PROPERTY_MAX_TOTAL, Integer.toString(maxTotal));
+            setIfAbsent(defaultConfiguration, PROPERTY_MAX_IDLE, Integer.toString(maxTotal));
+        }
+
+        // Redis keeps idle connections by default, the network between the application and the service does not
+        final EvictionProfile evictionProfile = EvictionProfile.of(0, settings);
+        if (evictionProfile.getMinEvictableIdleTime() > 0) {
+            setIfAbsent(defaultConfiguration, PROPERTY_MIN_EVICTABLE_IDLE_TIME, Integer.toString(evictionProfile.getMinEvictableIdleTime()));
+            setIfAbsent(defaultConfiguration, PROPERTY_TIME_BETWEEN_EVICTION_RUNS, Integer.toString(evictionProfile.getTimeBetweenEvictionRuns()));
+        }
+        setIfAbsent(defaultConfiguration, PROPERTY_TEST_WHILE_IDLE, "true");
+        setIfAbsent(defaultConfiguration, PROPERTY_MAX_WAIT, MAX_WAIT);
+        setIfAbsent(defaultConfiguration, PROPERTY_CONNECTION_TIMEOUT, TIMEOUT);
+        setIfAbsent(defaultConfiguration, PROPERTY_SO_TIMEOUT, TIMEOUT);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Pooling " + defaultConfiguration.getProperty(PROPERTY_MAX_TOTAL) + " connections to " + service.getName());
+        }
+        return defaultConfiguration;
+    }
+
+    private static URI getUri(VcapService service) {
+        for (String key : URI_CREDENTIALS) {
+            final String value = service.getCredential(key);
+            if (value != null && (value.startsWith(SCHEME + "://") || value.startsWith(SCHEME_SSL + "://"))) {
+                try {
+                    return new URI(value);
+                } catch (URISyntaxException e) {
+                    throw new ConfigurationException("Invalid URI in the credentials of " + service.getName(), e);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The user info of a Redis URI is either the password or <code>&lt;user&gt;:&lt;password&gt;</code>, where the user is ignored by Redis before version 6
+     */
+    private static String getPassword(URI uri) {
+        final String userInfo = uri.getUserInfo();
+        if (userInfo == null) {
+            return null;
+        }
+        final int separator = userInfo.indexOf(':');
+        return separator == -1 ? userInfo : userInfo.substring(separator + 1);
+    }
+
+    private VcapService getVcapService(ServiceInfo serviceInfo) {
+        return VcapServicesSnapshot.getInstance(environment, null).getServiceByName(serviceInfo.getId());
+    }
+
+    private static void setIfAbsent(Properties properties, String key, String value) {
+        if (properties.getProperty(key) == null) {
+            properties.setProperty(key, value);
+        }
+    }
+}
@@ -18,14 +18,29 @@ package org.cloudfoundry.reconfiguration.tomee.provider;
 
 
 import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
-import org.cloudfoundry.reconfiguration.tomee.spi.PropertiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.ContainerResources;
+import org.cloudfoundry.reconfiguration.tomee.ResolutionEvents;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+import org.cloudfoundry.reconfiguration.tomee.VcapServicesSnapshot;
+import org.cloudfoundry.reconfiguration.tomee.spi.SchemeAwarePropertiesProvider;
 import org.springframework.cloud.service.ServiceInfo;
 import org.springframework.cloud.service.common.RelationalServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
-public abstract class RelationalServicePropertiesProvider implements PropertiesProvider {
+public abstract class RelationalServicePropertiesProvider implements SchemeAwarePropertiesProvider {
 
     /**
      * JDBC driver class
@@ -51,10 +66,35 @@ public abstract class RelationalServicePropertiesProvider implements PropertiesP
      * If true connections will be validated before being returned from the pool.
      * If the validation fails, the connection is destroyed, and a new connection
      * will be retrieved from the pool (and validated).
-     * <p/> NOTE - for a true value to have any effect, the ValidationQuery parameter must be set.
+     * <p/> NOTE - without a ValidationQuery the pool validates connections with <code>Connection.isValid()</code>.
      */
     protected static final String PROPERTY_TEST_ON_BORROW = "TestOnBorrow";
 
+    /**
+     * If true idle connections will be validated by the idle connection evictor.
+     */
+    protected static final String PROPERTY_TEST_WHILE_IDLE = "TestWhileIdle";
+
+    /**
+     * The number of milliseconds to sleep between runs of the idle connection evictor.
+     */
+    protected static final String PROPERTY_TIME_BETWEEN_EVICTION_RUNS_MILLIS = "TimeBetweenEvictionRunsMillis";
+
+    /**
+     * The minimum amount of time a connection may sit idle in the pool before it is eligible for eviction.
+     */
+    protected static final String PROPERTY_MIN_EVICTABLE_IDLE_TIME_MILLIS = "MinEvictableIdleTimeMillis";
+
+    /**
+     * Time in milliseconds to keep a connection before recycling it. 0 means connections are never recycled.
+     */
+    protected static final String PROPERTY_MAX_AGE = "maxAge";
+
+    /**
+     * Avoid excess validation, only run validation at most at this frequency - time in milliseconds.
+     */
+    protected static final String PROPERTY_VALIDATION_INTERVAL = "validationInterval";
+
     /**
      * User name
      */
@@ -100,6 +140,73 @@ public abstract class RelationalServicePropertiesProvider implements PropertiesP
      */
     protected static final String PROPERTY_MAX_WAIT = "maxWait";
 
+    /**
+     * Make connections read-only and point them at the replicas of the service
+     */
+    public static final String SETTING_READ_ONLY = "read-only";
+
+    /**
+     * The default read-only state of connections created by this pool.
+     */
+    protected static final String PROPERTY_DEFAULT_READ_ONLY = "DefaultReadOnly";
+
+    static final String SETTING_VALIDATION_MODE = "validation-mode";
+
+    static final String SETTING_VALIDATION_INTERVAL = "validation-interval";
+
+    static final int DEFAULT_VALIDATION_INTERVAL = 30000;
+
+    static final String SETTING_POOL_IMPLEMENTATION = "pool-implementation";
+
+    static final String SETTING_PERFORMANCE_PROFILE = "performance-profile";
+
+    static final String SETTING_CONNECTION_PROPERTIES = "connection-properties";
+
+    static final String SETTING_JDBC_INTERCEPTORS = "jdbc-interceptors";
+
+    static final String SETTING_STATEMENT_CACHE_SIZE = "statement-cache-size";
+
+    static final String SETTING_QUERY_TIMEOUT = "query-timeout";
+
+    static final String SETTING_SLOW_QUERY_THRESHOLD = "slow-query-threshold";
+
+    static final String DEFAULT_JDBC_INTERCEPTORS = "connection-state,statement-cache,slow-query-report";
+
+    static final int DEFAULT_STATEMENT_CACHE_SIZE = 20;
+
+    static final int DEFAULT_QUERY_TIMEOUT = 60;
+
+    static final int DEFAULT_SLOW_QUERY_THRESHOLD = 1000;
+
+    /**
+     * Interceptors of the tomcat-jdbc pool, in the form <code>ClassName(name=value,name=value);ClassName</code>
+     */
+    protected static final String PROPERTY_JDBC_INTERCEPTORS = "jdbcInterceptors";
+
+    /**
+     * Connection properties passed to the JDBC driver, in the form <code>name=value;name=value</code>
+     */
+    protected static final String PROPERTY_CONNECTION_PROPERTIES = "ConnectionProperties";
+
+    /**
+     * Suffix of the id under which the connections of a read-only resource are budgeted, apart from the connections to the primary
+     */
+    private static final String READ_ONLY_SUFFIX = "-ro";
+
+    private static final String STATEMENT_CACHE_MAX = "(prepared=true,callable=false,max=";
+
+    private static final Logger logger = Logger.getLogger(RelationalServicePropertiesProvider.class.getName());
+
+    private final EnvironmentAccessor environment;
+
+    protected RelationalServicePropertiesProvider() {
+        this(new EnvironmentAccessor());
+    }
+
+    protected RelationalServicePropertiesProvider(EnvironmentAccessor environment) {
+        this.environment = environment;
+    }
+
     @Override
     public boolean canProvide(ServiceInfo serviceInfo) {
         boolean provides = serviceInfo instanceof RelationalServiceInfo;
@@ -111,6 +218,17 @@ public abstract class RelationalServicePropertiesProvider implements PropertiesP
         return provides;
     }
 
+    @Override
+    public Collection<String> getSchemes() {
+        final String jdbcSchema = getJdbcSchema();
+        return jdbcSchema == null ? Collections.<String>emptySet() : Collections.singleton(jdbcSchema);
+    }
+
+    @Override
+    public int getPriority() {
+        return DEFAULT_PRIORITY;
+    }
+
     @Override
     public final Properties provide(ServiceInfo serviceInfo, Properties defaultConfiguration) {
         if (!canProvide(serviceInfo)) {
@@ -121,17 +239,73 @@ public abstract class RelationalServicePropertiesProvider implements PropertiesP
         defaultConfiguration.setProperty(PROPERTY_JDBC_URL, serviceConfig.getJdbcUrl());
         defaultConfiguration.setProperty(PROPERTY_USER_NAME, serviceConfig.getUserName());
         defaultConfiguration.setProperty(PROPERTY_PASSWORD, serviceConfig.getPassword());
-        defaultConfiguration.setProperty(PROPERTY_TEST_ON_BORROW, "true");
         defaultConfiguration.put(PROPERTY_PASSWORD_CIPHER, "PlainText");
 
-        configureConnectionPool(defaultConfiguration);
+        final boolean onReplicas = configureReplicas(serviceConfig, defaultConfiguration);
+
+        configureConnectionPool(serviceConfig, defaultConfiguration, onReplicas);
 
         configure(serviceConfig, defaultConfiguration);
+
+        configurePerformanceProfile(serviceConfig, defaultConfiguration);
+
+        configureValidation(serviceConfig, defaultConfiguration);
+
+        configureEviction(serviceConfig, defaultConfiguration);
+
+        configurePoolImplementation(serviceConfig, defaultConfiguration);
         return defaultConfiguration;
     }
 
     protected abstract void configure(RelationalServiceInfo serviceInfo, Properties properties);
 
+    /**
+     * The query used to validate connections, or <code>null</code> to rely on <code>Connection.isValid()</code>
+     */
+    protected String getValidationQuery() {
+        return null;
+    }
+
+    /**
+     * Build a JDBC URL spanning several hosts of the service
+     *
+     * @param jdbcUrl  JDBC URL of the primary
+     * @param hosts    Hosts of the new URL as <code>host[:port]</code>: the primary followed by the replicas, or only the replicas when <code>readOnly</code>
+     * @param readOnly <code>true</code> if the URL is used by a read-only resource
+     * @return The JDBC URL or <code>null</code> if the vendor does not support multi-host URLs. By default only a read-only resource with a single replica is supported.
+     */
+    protected String getMultiHostJdbcUrl(String jdbcUrl, List<String> hosts, boolean readOnly) {
+        return readOnly && hosts.size() == 1 ? ReplicaHosts.withHosts(jdbcUrl, null, hosts) : null;
+    }
+
+    /**
+     * The time after which the database server drops idle connections, in milliseconds
+     *
+     * @return The idle timeout or <code>0</code> if the server does not drop idle connections
+     */
+    protected int getServerIdleTimeout() {
+        return 0;
+    }
+
+    /**
+     * The validation mode used when the <code>validation-mode</code> setting is not set
+     */
+    protected ValidationMode getValidationMode() {
+        return ValidationMode.INTERVAL;
+    }
+
+    /**
+     * The connection properties of the JDBC driver tuned for a performance profile. The properties already set in the <code>ConnectionProperties</code> of the resource take
+     * precedence over them.
+     *
+     * @param profile    The profile, other than {@link PerformanceProfile#DEFAULT}
+     * @param jdbcDriver The driver class selected by {@link #configure(RelationalServiceInfo, Properties)}
+     * @return The connection properties by name, empty if the vendor has no tuning for the profile
+     */
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return Collections.emptyMap();
+    }
+
     protected String getJdbcSchema() {
         /**
          * Providing default behaviour in case canProvide() is overridden
@@ -139,13 +313,348 @@ public abstract class RelationalServicePropertiesProvider implements PropertiesP
         return null;
     }
 
-    private void configureConnectionPool(Properties defaultConfiguration) {
+    /**
+     * Get the JDBC driver of a bound service among the drivers visible to the application. The drivers of each application are discovered once.
+     *
+     * @param candidates Driver classes supporting the service, by order of preference
+     * @return The first candidate that is available
+     * @throws ConfigurationException In case none of the candidates is available
+     */
+    protected final String getJdbcDriver(RelationalServiceInfo serviceInfo, String... candidates) {
+        final ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.DRIVER_PROBING);
+        final String driver;
+        try {
+            span.setPropertiesProvider(getClass());
+            driver = JdbcDrivers.getInstance(Thread.currentThread().getContextClassLoader()).find(candidates);
+        } finally {
+            span.end();
+        }
+
+        if (driver == null) {
+            throw new ConfigurationException("No JDBC driver for service " + serviceInfo.getId() + " (" + getJdbcSchema() + "): add "
+                    + (candidates.length == 1 ? candidates[0] : "one of " + Arrays.toString(candidates)) + " to the application or to the lib directory of TomEE");
+        }
+        return driver;
+    }
+
+    /**
+     * Build the connection properties of a driver
+     *
+     * @param namesAndValues Names of the properties, each followed by its value
+     * @return The connection properties, in order
+     */
+    protected static Map<String, String> connectionProperties(String... namesAndValues) {
+        final Map<String, String> connectionProperties = new LinkedHashMap<>(namesAndValues.length);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            connectionProperties.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return Collections.unmodifiableMap(connectionProperties);
+    }
+
+    /**
+     * Get the <code>VCAP_SERVICES</code> entry of a bound service
+     *
+     * @return The entry of the service or <code>null</code> if the service is not bound through <code>VCAP_SERVICES</code>
+     */
+    protected VcapService getVcapService(ServiceInfo serviceInfo) {
+        return VcapServicesSnapshot.getInstance(environment, null).getServiceByName(serviceInfo.getId());
+    }
+
+    /**
+     * Point the resource at the primary and the replicas of the service if the vendor supports multi-host URLs, or only at the replicas if the resource is read-only
+     *
+     * @return <code>true</code> if the resource connects only to the replicas
+     */
+    private boolean configureReplicas(RelationalServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+        final boolean readOnly = settings.getBoolean(SETTING_READ_ONLY, false);
+        final ReplicaHosts replicas = ReplicaHosts.of(settings);
+        if (readOnly) {
+            defaultConfiguration.setProperty(PROPERTY_DEFAULT_READ_ONLY, "true");
+        }
+
+        final String jdbcUrl = serviceInfo.getJdbcUrl();
+        final String primary = ReplicaHosts.getHost(jdbcUrl);
+        String multiHostJdbcUrl = null;
+        if (!replicas.isEmpty() && primary != null) {
+            final List<String> hosts = new ArrayList<>();
+            if (!readOnly) {
+                hosts.add(primary);
+            }
+            hosts.addAll(replicas.getHosts(ReplicaHosts.getPort(primary)));
+            multiHostJdbcUrl = getMultiHostJdbcUrl(jdbcUrl, hosts, readOnly);
+        }
+
+        if (multiHostJdbcUrl != null) {
+            defaultConfiguration.setProperty(PROPERTY_JDBC_URL, multiHostJdbcUrl);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("Connecting " + (readOnly ? "read-only resource of " : "") + serviceInfo.getId() + " to " + ReplicaHosts.getHost(multiHostJdbcUrl));
+            }
+        } else if (readOnly) {
+            logger.warning("Cannot connect read-only resource of " + serviceInfo.getId() + " to its replicas, it connects to the primary"
+                    + (replicas.isEmpty() ? ": the service lists no replicas" : ": " + getJdbcSchema() + " URLs do not support these replicas"));
+        }
+        return readOnly && multiHostJdbcUrl != null;
+    }
+
+    /**
+     * Size the pool of the resource and request its connections from the budget of the service. A read-only resource connected to the replicas has a budget of its own, a
+     * read-only resource connected to the primary shares the budget of the primary.
+     */
+    private void configureConnectionPool(RelationalServiceInfo serviceInfo, Properties defaultConfiguration, boolean onReplicas) {
         if (defaultConfiguration.getProperty(PROPERTY_MAX_ACTIVE) == null) {
-            defaultConfiguration.setProperty(PROPERTY_MAX_ACTIVE, "2");
-            defaultConfiguration.setProperty(PROPERTY_MAX_IDLE, "2");
+            final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+            final ContainerResources containerResources = ContainerResources.getInstance();
+            final String budgetId = onReplicas ? serviceInfo.getId() + READ_ONLY_SUFFIX : serviceInfo.getId();
+            final int sizedMaxActive = new ConnectionPoolSizing(containerResources).getMaxActive(budgetId, settings);
+            final String maxActive = Integer.toString(ConnectionBudget.getInstance().request(budgetId, sizedMaxActive, settings, containerResources));
+            defaultConfiguration.setProperty(PROPERTY_MAX_ACTIVE, maxActive);
+            defaultConfiguration.setProperty(PROPERTY_MAX_IDLE, maxActive);
             defaultConfiguration.setProperty(PROPERTY_MIN_IDLE, "0");
             defaultConfiguration.setProperty(PROPERTY_INITIAL_SIZE, "0");
             defaultConfiguration.setProperty(PROPERTY_MAX_WAIT, "30000");
         }
     }
+
+    /**
+     * Merge the connection properties of the performance profile, of the <code>connection-properties</code> setting and of the resource, by increasing precedence
+     */
+    private void configurePerformanceProfile(RelationalServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+        final String performanceProfile = settings.get(SETTING_PERFORMANCE_PROFILE);
+        final PerformanceProfile profile = performanceProfile == null || performanceProfile.isEmpty() ? PerformanceProfile.DEFAULT : PerformanceProfile.of(performanceProfile);
+
+        final Map<String, String> connectionProperties = new LinkedHashMap<>();
+        if (profile != PerformanceProfile.DEFAULT) {
+            connectionProperties.putAll(getConnectionProperties(profile, defaultConfiguration.getProperty(PROPERTY_JDBC_DRIVER)));
+        }
+        connectionProperties.putAll(parseConnectionProperties(settings.get(SETTING_CONNECTION_PROPERTIES)));
+        connectionProperties.putAll(parseConnectionProperties(defaultConfiguration.getProperty(PROPERTY_CONNECTION_PROPERTIES)));
+        if (!connectionProperties.isEmpty()) {
+            defaultConfiguration.setProperty(PROPERTY_CONNECTION_PROPERTIES, formatConnectionProperties(connectionProperties));
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Tuning the driver of " + serviceInfo.getId() + " for performance profile " + profile + ": " + connectionProperties.keySet());
+        }
+    }
+
+    private void configureValidation(RelationalServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+        final String validationMode = settings.get(SETTING_VALIDATION_MODE);
+        final ValidationMode mode = validationMode == null || validationMode.isEmpty() ? getValidationMode() : ValidationMode.of(validationMode);
+        final String interval = Integer.toString(settings.getInt(SETTING_VALIDATION_INTERVAL, DEFAULT_VALIDATION_INTERVAL));
+        final String validationQuery = getValidationQuery();
+
+        switch (mode) {
+            case QUERY:
+                defaultConfiguration.setProperty(PROPERTY_TEST_ON_BORROW, "true");
+                setValidationQuery(defaultConfiguration, validationQuery);
+                break;
+            case INTERVAL:
+                defaultConfiguration.setProperty(PROPERTY_TEST_ON_BORROW, "true");
+                defaultConfiguration.setProperty(PROPERTY_VALIDATION_INTERVAL, interval);
+                setValidationQuery(defaultConfiguration, validationQuery);
+                break;
+            case JDBC4:
+                defaultConfiguration.setProperty(PROPERTY_TEST_ON_BORROW, "true");
+                defaultConfiguration.setProperty(PROPERTY_VALIDATION_INTERVAL, interval);
+                defaultConfiguration.remove(PROPERTY_VALIDATION_QUERY);
+                break;
+            case IDLE:
+                defaultConfiguration.setProperty(PROPERTY_TEST_ON_BORROW, "false");
+                defaultConfiguration.setProperty(PROPERTY_TEST_WHILE_IDLE, "true");
+                defaultConfiguration.setProperty(PROPERTY_TIME_BETWEEN_EVICTION_RUNS_MILLIS, interval);
+                setValidationQuery(defaultConfiguration, validationQuery);
+                break;
+            default:
+                throw new ConfigurationException("Unsupported validation mode: " + mode);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Validating connections of " + serviceInfo.getId() + " with validation mode " + mode);
+        }
+    }
+
+    private void configureEviction(RelationalServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+        final EvictionProfile profile = EvictionProfile.of(getServerIdleTimeout(), settings);
+
+        final int timeBetweenEvictionRuns = profile.getTimeBetweenEvictionRuns();
+        if (timeBetweenEvictionRuns > 0) {
+            final String configured = defaultConfiguration.getProperty(PROPERTY_TIME_BETWEEN_EVICTION_RUNS_MILLIS);
+            if (configured == null || isLongerThan(configured, timeBetweenEvictionRuns)) {
+                defaultConfiguration.setProperty(PROPERTY_TIME_BETWEEN_EVICTION_RUNS_MILLIS, Integer.toString(timeBetweenEvictionRuns));
+            }
+            setIfAbsent(defaultConfiguration, PROPERTY_MIN_EVICTABLE_IDLE_TIME_MILLIS, Integer.toString(profile.getMinEvictableIdleTime()));
+        }
+        setIfAbsent(defaultConfiguration, PROPERTY_MAX_AGE, Integer.toString(profile.getMaxAge()));
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Evicting connections of " + serviceInfo.getId() + " idle for " + profile.getMinEvictableIdleTime() + " ms, idle timeout " + profile.getIdleTimeout()
+                    + " ms, max age " + profile.getMaxAge() + " ms");
+        }
+    }
+
+    /**
+     * Select the pool of the resource and translate the pool properties to the names it expects. The pool configured on the resource through <code>DataSourceCreator</code> is
+     * kept unless the <code>pool-implementation</code> setting is set, properties of pools that are not supported are left untouched.
+     */
+    private void configurePoolImplementation(RelationalServiceInfo serviceInfo, Properties defaultConfiguration) {
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+        final String poolImplementationSetting = settings.get(SETTING_POOL_IMPLEMENTATION);
+        final PoolImplementation poolImplementation;
+        if (poolImplementationSetting != null && !poolImplementationSetting.isEmpty()) {
+            poolImplementation = PoolImplementation.of(poolImplementationSetting);
+            defaultConfiguration.setProperty(PoolImplementation.PROPERTY_DATA_SOURCE_CREATOR, poolImplementation.getDataSourceCreator());
+        } else {
+            final String dataSourceCreator = defaultConfiguration.getProperty(PoolImplementation.PROPERTY_DATA_SOURCE_CREATOR);
+            final PoolImplementation configured = dataSourceCreator == null ? null : PoolImplementation.find(dataSourceCreator);
+            poolImplementation = configured == null ? PoolImplementation.TOMCAT : configured;
+        }
+
+        configureInterceptors(serviceInfo, defaultConfiguration, poolImplementation);
+
+        poolImplementation.translate(defaultConfiguration);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Pooling connections of " + serviceInfo.getId() + " with " + poolImplementation);
+        }
+    }
+
+    /**
+     * Build the interceptor chain of a tomcat-jdbc pool, unless the resource sets its own. The settings are read whatever the pool, so that they are not passed on to it.
+     */
+    private void configureInterceptors(RelationalServiceInfo serviceInfo, Properties defaultConfiguration, PoolImplementation poolImplementation) {
+        final ResourceSettings settings = new ResourceSettings(defaultConfiguration, getVcapService(serviceInfo));
+        final List<JdbcInterceptor> interceptors = JdbcInterceptor.of(settings.get(SETTING_JDBC_INTERCEPTORS, DEFAULT_JDBC_INTERCEPTORS));
+        final int statementCacheSize = settings.getInt(SETTING_STATEMENT_CACHE_SIZE, DEFAULT_STATEMENT_CACHE_SIZE);
+        final int queryTimeout = settings.getInt(SETTING_QUERY_TIMEOUT, DEFAULT_QUERY_TIMEOUT);
+        final int slowQueryThreshold = settings.getInt(SETTING_SLOW_QUERY_THRESHOLD, DEFAULT_SLOW_QUERY_THRESHOLD);
+        if (poolImplementation != PoolImplementation.TOMCAT || interceptors.isEmpty() || defaultConfiguration.getProperty(PROPERTY_JDBC_INTERCEPTORS) != null) {
+            return;
+        }
+
+        final StringBuilder chain = new StringBuilder();
+        for (JdbcInterceptor interceptor : interceptors) {
+            if (chain.length() > 0) {
+                chain.append(';');
+            }
+            chain.append(interceptor.getInterceptorClass());
+            switch (interceptor) {
+                case CONNECTION_STATE:
+                    break;
+                case STATEMENT_CACHE:
+                    // The limit of the cache applies to the whole pool
+                    chain.append(STATEMENT_CACHE_MAX).append(statementCacheSize * getMaxActive(defaultConfiguration)).append(')');
+                    break;
+                case QUERY_TIMEOUT:
+                    chain.append("(queryTimeout=").append(queryTimeout).append(')');
+                    break;
+                case SLOW_QUERY_REPORT:
+                    chain.append("(threshold=").append(slowQueryThreshold).append(')');
+                    break;
+                default:
+                    throw new ConfigurationException("Unsupported JDBC interceptor: " + interceptor);
+            }
+        }
+        defaultConfiguration.setProperty(PROPERTY_JDBC_INTERCEPTORS, chain.toString());
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Intercepting connections of " + serviceInfo.getId() + " with " + interceptors);
+        }
+    }
+
+    /**
+     * Shrink the pool of a configuration computed for <code>requested</code> connections, together with the statement cache of the pool
+     *
+     * @see ConnectionBudget#claim(String, java.util.List, Properties)
+     */
+    static void resizeConnectionPool(Properties configuration, int requested, int maxActive) {
+        final String dataSourceCreator = configuration.getProperty(PoolImplementation.PROPERTY_DATA_SOURCE_CREATOR);
+        final PoolImplementation configured = dataSourceCreator == null ? null : PoolImplementation.find(dataSourceCreator);
+        final PoolImplementation poolImplementation = configured == null ? PoolImplementation.TOMCAT : configured;
+        configuration.setProperty(poolImplementation.getPropertyName(PROPERTY_MAX_ACTIVE), Integer.toString(maxActive));
+        configuration.setProperty(PROPERTY_MAX_IDLE, Integer.toString(maxActive));
+
+        final String interceptors = configuration.getProperty(PROPERTY_JDBC_INTERCEPTORS);
+        final int statementCache = interceptors == null ? -1 : interceptors.indexOf(JdbcInterceptor.STATEMENT_CACHE.getInterceptorClass() + STATEMENT_CACHE_MAX);
+        if (statementCache != -1) {
+            final int start = statementCache + JdbcInterceptor.STATEMENT_CACHE.getInterceptorClass().length() + STATEMENT_CACHE_MAX.length();
+            final int end = interceptors.indexOf(')', start);
+            try {
+                final int statementCacheSize = Integer.parseInt(interceptors.substring(start, end)) / Math.max(1, requested);
+                configuration.setProperty(PROPERTY_JDBC_INTERCEPTORS, interceptors.substring(0, start) + statementCacheSize * maxActive + interceptors.substring(end));
+            } catch (RuntimeException e) {
+                logger.log(Level.FINE, "Cannot resize the statement cache of " + interceptors, e);
+            }
+        }
+    }
+
+    /**
+     * The size of the pool, or 1 if it is not set as a number
+     */
+    private static int getMaxActive(Properties properties) {
+        final String maxActive = properties.getProperty(PROPERTY_MAX_ACTIVE);
+        try {
+            return maxActive == null ? 1 : Math.max(1, Integer.parseInt(maxActive.trim()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * Durations that are not plain milliseconds, such as <code>30 seconds</code>, are left to TomEE and never considered longer
+     */
+    private static boolean isLongerThan(String milliseconds, int other) {
+        try {
+            return Long.parseLong(milliseconds.trim()) > other;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse connection properties in the form <code>name=value;name=value</code>. A name without a value is kept with an empty value, as the pools do.
+     */
+    static Map<String, String> parseConnectionProperties(String value) {
+        final Map<String, String> connectionProperties = new LinkedHashMap<>();
+        if (value != null) {
+            for (String entry : value.split(";")) {
+                final String trimmed = entry.trim();
+                if (!trimmed.isEmpty()) {
+                    final int separator = trimmed.indexOf('=');
+                    if (separator == -1) {
+                        connectionProperties.put(trimmed, "");
+                    } else {
+                        connectionProperties.put(trimmed.substring(0, separator).trim(), trimmed.substring(separator + 1).trim());
+                    }
+                }
+            }
+        }
+        return connectionProperties;
+    }
+
+    static String formatConnectionProperties(Map<String, String> connectionProperties) {
+        final StringBuilder value = new StringBuilder();
+        for (Map.Entry<String, String> entry : connectionProperties.entrySet()) {
+            if (value.length() > 0) {
+                value.append(';');
+            }
+            value.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return value.toString();
+    }
+
+    private static void setIfAbsent(Properties properties, String key, String value) {
+        if (properties.getProperty(key) == null) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private static void setValidationQuery(Properties properties, String validationQuery) {
+        if (validationQuery != null) {
+            properties.setProperty(PROPERTY_VALIDATION_QUERY, validationQuery);
+        }
+    }
 }
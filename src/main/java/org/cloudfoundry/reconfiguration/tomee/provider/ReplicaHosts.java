@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The read replicas of a relational service, as <code>host[:port]</code> entries. They are taken from the <code>replicas</code> setting, a comma separated list, or from a
+ * credential listing the replicas as strings, URIs or objects with a <code>host</code> and a <code>port</code>:
+ * <ul>
+ * <li><code>replicas</code></li>
+ * <li><code>read_replicas</code></li>
+ * <li><code>replica_hosts</code></li>
+ * </ul>
+ *
+ * @see RelationalServicePropertiesProvider
+ */
+final class ReplicaHosts {
+
+    static final String SETTING_REPLICAS = "replicas";
+
+    private static final String[] REPLICA_CREDENTIALS = new String[] { "replicas", "read_replicas", "replica_hosts" };
+
+    private static final String AUTHORITY_PREFIX = "//";
+
+    private final List<String> hosts;
+
+    private ReplicaHosts(List<String> hosts) {
+        this.hosts = Collections.unmodifiableList(hosts);
+    }
+
+    static ReplicaHosts of(ResourceSettings settings) {
+        final List<String> hosts = new ArrayList<>();
+        final String replicas = settings.get(SETTING_REPLICAS);
+        if (replicas != null && !replicas.isEmpty()) {
+            for (String replica : replicas.split(",")) {
+                addHost(hosts, replica);
+            }
+            return new ReplicaHosts(hosts);
+        }
+
+        final VcapService service = settings.getService();
+        if (service != null) {
+            for (String key : REPLICA_CREDENTIALS) {
+                final Object credential = service.getCredentials().get(key);
+                if (credential instanceof List) {
+                    for (Object replica : (List<?>) credential) {
+                        addHost(hosts, replica);
+                    }
+                    break;
+                }
+            }
+        }
+        return new ReplicaHosts(hosts);
+    }
+
+    boolean isEmpty() {
+        return hosts.isEmpty();
+    }
+
+    /**
+     * @param defaultPort Port of the replicas listed without one, or <code>null</code> to leave it to the driver
+     */
+    List<String> getHosts(String defaultPort) {
+        if (defaultPort == null) {
+            return hosts;
+        }
+
+        final List<String> hostsWithPort = new ArrayList<>(hosts.size());
+        for (String host : hosts) {
+            hostsWithPort.add(hasPort(host) ? host : host + ":" + defaultPort);
+        }
+        return hostsWithPort;
+    }
+
+    /**
+     * @return The <code>host[:port]</code> of a JDBC URL with an authority, such as <code>jdbc:postgresql://host:5432/db</code>, or <code>null</code> if it has none
+     */
+    static String getHost(String jdbcUrl) {
+        if (!jdbcUrl.contains(AUTHORITY_PREFIX)) {
+            return null;
+        }
+        final int start = getAuthorityStart(jdbcUrl);
+        final String authority = jdbcUrl.substring(start, getAuthorityEnd(jdbcUrl, start));
+        return authority.substring(authority.lastIndexOf('@') + 1);
+    }
+
+    /**
+     * @return The port of a <code>host[:port]</code> entry or <code>null</code> if it has none
+     */
+    static String getPort(String host) {
+        return hasPort(host) ? host.substring(host.lastIndexOf(':') + 1) : null;
+    }
+
+    /**
+     * Replace the hosts of a JDBC URL
+     *
+     * @param jdbcUrl JDBC URL with an authority
+     * @param prefix  Prefix of the new URL before the authority, such as <code>jdbc:mysql:loadbalance:</code>, or <code>null</code> to keep the current one
+     * @param hosts   Hosts of the new URL
+     * @throws ConfigurationException In case the JDBC URL has no authority
+     */
+    static String withHosts(String jdbcUrl, String prefix, List<String> hosts) {
+        final int start = getAuthorityStart(jdbcUrl);
+        final StringBuilder url = new StringBuilder(jdbcUrl.length() + hosts.size() * 32);
+        url.append(prefix == null ? jdbcUrl.substring(0, start - AUTHORITY_PREFIX.length()) : prefix).append(AUTHORITY_PREFIX);
+        for (int i = 0; i < hosts.size(); i++) {
+            if (i > 0) {
+                url.append(',');
+            }
+            url.append(hosts.get(i));
+        }
+        return url.append(jdbcUrl.substring(getAuthorityEnd(jdbcUrl, start))).toString();
+    }
+
+    /**
+     * Add a query parameter to a JDBC URL, unless the URL already sets it
+     */
+    static String withParameter(String jdbcUrl, String name, String value) {
+        final int query = jdbcUrl.indexOf('?');
+        if (query >= 0 && (jdbcUrl.indexOf("?" + name + "=", query) >= 0 || jdbcUrl.indexOf("&" + name + "=", query) >= 0)) {
+            return jdbcUrl;
+        }
+        return jdbcUrl + (query < 0 ? '?' : '&') + name + "=" + value;
+    }
+
+    private static void addHost(List<String> hosts, Object replica) {
+        String host = null;
+        if (replica instanceof Map) {
+            final Map<?, ?> entry = (Map<?, ?>) replica;
+            final Object name = entry.get("host") != null ? entry.get("host") : entry.get("hostname");
+            if (name != null) {
+                host = entry.get("port") == null ? name.toString() : name + ":" + entry.get("port");
+            }
+        } else if (replica != null) {
+            host = toHost(replica.toString().trim());
+        }
+
+        if (host != null && !host.isEmpty() && !hosts.contains(host)) {
+            hosts.add(host);
+        }
+    }
+
+    private static String toHost(String replica) {
+        if (!replica.contains("://")) {
+            return replica;
+        }
+        try {
+            final URI uri = new URI(replica);
+            return uri.getHost() == null ? null : uri.getPort() < 0 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        } catch (URISyntaxException e) {
+            throw new ConfigurationException("Invalid replica: " + replica, e);
+        }
+    }
+
+    private static boolean hasPort(String host) {
+        final int colon = host.lastIndexOf(':');
+        return colon > host.lastIndexOf(']');
+    }
+
+    private static int getAuthorityStart(String jdbcUrl) {
+        final int separator = jdbcUrl.indexOf(AUTHORITY_PREFIX);
+        if (separator < 0) {
+            throw new ConfigurationException("Cannot find the hosts of " + jdbcUrl);
+        }
+        return separator + AUTHORITY_PREFIX.length();
+    }
+
+    private static int getAuthorityEnd(String jdbcUrl, int start) {
+        for (int i = start; i < jdbcUrl.length(); i++) {
+            final char c = jdbcUrl.charAt(i);
+            if (c == '/' || c == '?' || c == ';') {
+                return i;
+            }
+        }
+        return jdbcUrl.length();
+    }
+}
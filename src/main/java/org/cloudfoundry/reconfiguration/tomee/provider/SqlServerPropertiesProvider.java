@@ -18,24 +18,63 @@ package org.cloudfoundry.reconfiguration.tomee.provider;
 
 import org.springframework.cloud.service.common.RelationalServiceInfo;
 
+import java.util.Map;
 import java.util.Properties;
 
 public final class SqlServerPropertiesProvider extends RelationalServicePropertiesProvider {
 
     private static final String JDBC_DRIVER_CLASS = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
 
+    private static final int PRIORITY = 400;
+
     private static final String JDBC_SCHEMA = "jdbc:sqlserver:";
 
     private static final String VALIDATION_QUERY = "SELECT 1";
 
+    /**
+     * Idle timeout of the Azure SQL Database gateway
+     */
+    private static final int SERVER_IDLE_TIMEOUT = 1800000;
+
+    /**
+     * Throughput profile of the Microsoft driver: string parameters are sent as <code>varchar</code> rather than <code>nvarchar</code>, which would otherwise be implicitly
+     * converted on the server and defeat the indexes of <code>varchar</code> columns, and prepared statement handles are cached per connection. Logging in times out after 10
+     * seconds (<code>loginTimeout</code> is in seconds) and reading from a hung socket after 5 minutes (<code>socketTimeout</code> is in milliseconds).
+     */
+    private static final Map<String, String> THROUGHPUT = connectionProperties(
+            "sendStringParametersAsUnicode", "false",
+            "disableStatementPooling", "false",
+            "statementPoolingCacheSize", "100",
+            "loginTimeout", "10",
+            "socketTimeout", "300000");
+
     @Override
     protected void configure(RelationalServiceInfo serviceInfo, Properties properties) {
-        properties.setProperty(PROPERTY_JDBC_DRIVER, JDBC_DRIVER_CLASS);
-        properties.setProperty(PROPERTY_VALIDATION_QUERY, VALIDATION_QUERY);
+        properties.setProperty(PROPERTY_JDBC_DRIVER, getJdbcDriver(serviceInfo, JDBC_DRIVER_CLASS));
+    }
+
+    @Override
+    protected Map<String, String> getConnectionProperties(PerformanceProfile profile, String jdbcDriver) {
+        return THROUGHPUT;
+    }
+
+    @Override
+    protected String getValidationQuery() {
+        return VALIDATION_QUERY;
+    }
+
+    @Override
+    protected int getServerIdleTimeout() {
+        return SERVER_IDLE_TIMEOUT;
     }
 
     @Override
     protected String getJdbcSchema() {
         return JDBC_SCHEMA;
     }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY;
+    }
 }
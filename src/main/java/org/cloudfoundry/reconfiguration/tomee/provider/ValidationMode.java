@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+
+import java.util.Locale;
+
+/**
+ * How the connection pool of a relational resource validates its connections, selected with the <code>validation-mode</code> setting.
+ *
+ * @see RelationalServicePropertiesProvider
+ */
+public enum ValidationMode {
+
+    /**
+     * Run the validation query each time a connection is borrowed. Costs a round trip to the database per borrow.
+     */
+    QUERY,
+
+    /**
+     * Run the validation query when a connection is borrowed, at most once per validation interval for each connection.
+     */
+    INTERVAL,
+
+    /**
+     * Validate a borrowed connection with the JDBC 4 <code>Connection.isValid()</code> of the driver instead of a query, at most once per validation interval.
+     */
+    JDBC4,
+
+    /**
+     * Do not validate borrowed connections, run the validation query on idle connections from the evictor thread of the pool instead.
+     */
+    IDLE;
+
+    /**
+     * @throws ConfigurationException In case the value is not a validation mode
+     */
+    public static ValidationMode of(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Unsupported validation mode: " + value, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.spi;
+
+import java.util.Collection;
+
+/**
+ * Optional extension of the {@link PropertiesProvider} SPI for providers which know up front the JDBC URL schemes they handle. Such providers are dispatched to directly by scheme instead of
+ * being probed one after the other through {@link #canProvide(org.springframework.cloud.service.ServiceInfo)}.
+ *
+ * @see PropertiesProvider
+ */
+public interface SchemeAwarePropertiesProvider extends PropertiesProvider {
+
+    /**
+     * Priority of the providers which do not declare one. Providers with a lower priority value are consulted first.
+     */
+    int DEFAULT_PRIORITY = 1000;
+
+    /**
+     * The JDBC URL schemes handled by this provider, including the trailing colon, e.g. <code>jdbc:mysql:</code>
+     *
+     * @return The schemes handled by this provider, never <code>null</code>
+     */
+    Collection<String> getSchemes();
+
+    /**
+     * The priority of this provider when several providers can configure the same service. Providers with a lower priority value are consulted first.
+     *
+     * @return The priority of this provider
+     */
+    int getPriority();
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConnectionWarmUpTest {
+
+    @Test
+    public void testConnectionsAreOpenedInParallel() {
+        SlowDataSource dataSource = new SlowDataSource(300);
+        long start = System.currentTimeMillis();
+        List<Long> latencies = ConnectionWarmUp.getInstance().warmUp("jdbc/db", bound(dataSource.create()), 4, System.currentTimeMillis() + 10000);
+
+        Assert.assertEquals(4, latencies.size());
+        Assert.assertTrue(System.currentTimeMillis() - start < 4 * 300);
+        Assert.assertEquals(4, dataSource.opened.get());
+        Assert.assertEquals(4, dataSource.closed.get());
+    }
+
+    @Test
+    public void testUnboundDataSource() {
+        List<Long> latencies = ConnectionWarmUp.getInstance().warmUp("jdbc/db", bound(null), 2, System.currentTimeMillis() + 300);
+        Assert.assertTrue(latencies.isEmpty());
+    }
+
+    @Test
+    public void testLateConnectionsAreClosed() throws InterruptedException {
+        SlowDataSource dataSource = new SlowDataSource(500);
+        List<Long> latencies = ConnectionWarmUp.getInstance().warmUp("jdbc/db", bound(dataSource.create()), 2, System.currentTimeMillis() + 100);
+        Assert.assertTrue(latencies.isEmpty());
+
+        Thread.sleep(1000);
+        Assert.assertEquals(2, dataSource.opened.get());
+        Assert.assertEquals(2, dataSource.closed.get());
+    }
+
+    @Test
+    public void testConnectionsReturnedAtTheDeadlineAreClosed() throws InterruptedException {
+        SlowDataSource dataSource = new SlowDataSource(50);
+        for (int i = 0; i < 20; i++) {
+            ConnectionWarmUp.getInstance().warmUp("jdbc/db", bound(dataSource.create()), 4, System.currentTimeMillis() + 50);
+        }
+
+        Thread.sleep(500);
+        Assert.assertEquals(dataSource.opened.get(), dataSource.closed.get());
+    }
+
+    @Test
+    public void testDefaultConnections() {
+        Properties configuration = new Properties();
+        Assert.assertEquals(1, ConnectionWarmUp.getDefaultConnections(configuration));
+
+        configuration.setProperty("minIdle", "0");
+        configuration.setProperty("initialSize", "3");
+        Assert.assertEquals(3, ConnectionWarmUp.getDefaultConnections(configuration));
+
+        configuration.setProperty("maxActive", "8");
+        Assert.assertEquals(8, ConnectionWarmUp.getDefaultConnections(configuration));
+
+        configuration.remove("maxActive");
+        configuration.setProperty("maxTotal", "6");
+        Assert.assertEquals(6, ConnectionWarmUp.getDefaultConnections(configuration));
+    }
+
+    private static Callable<Object> bound(final Object dataSource) {
+        return new Callable<Object>() {
+
+            @Override
+            public Object call() {
+                return dataSource;
+            }
+        };
+    }
+
+    private static final class SlowDataSource {
+
+        private final long connectTime;
+
+        private final AtomicInteger opened = new AtomicInteger();
+
+        private final AtomicInteger closed = new AtomicInteger();
+
+        private SlowDataSource(long connectTime) {
+            this.connectTime = connectTime;
+        }
+
+        DataSource create() {
+            final InvocationHandler connectionHandler = new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("close".equals(method.getName())) {
+                        closed.incrementAndGet();
+                    }
+                    return null;
+                }
+            };
+
+            return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { DataSource.class }, new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws InterruptedException {
+                    if ("getConnection".equals(method.getName())) {
+                        Thread.sleep(connectTime);
+                        opened.incrementAndGet();
+                        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, connectionHandler);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+}
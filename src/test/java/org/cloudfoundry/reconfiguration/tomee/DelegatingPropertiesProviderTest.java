@@ -16,9 +16,13 @@
 
 package org.cloudfoundry.reconfiguration.tomee;
 
+import org.cloudfoundry.reconfiguration.tomee.dummy.DummyPropertiesProvider;
 import org.cloudfoundry.reconfiguration.tomee.dummy.DummyServiceInfo;
 import org.cloudfoundry.reconfiguration.tomee.dummy.JdbcServiceInfo;
 import org.cloudfoundry.reconfiguration.tomee.dummy.ServiceInfoWithoutPropertiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.provider.ActiveMqPropertiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.provider.PostgreSqlProperiesProvider;
+import org.cloudfoundry.reconfiguration.tomee.provider.RedisPropertiesProvider;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -70,6 +74,30 @@ public class DelegatingPropertiesProviderTest {
         propertiesProvider.provides();
     }
 
+    @Test
+    public void testServicePrefixMatchesTheProvider() {
+        DelegatingPropertiesProvider.checkServicePrefix(DEFAULT_CONTEXT_ROOT + "/jdbc/db", PostgreSqlProperiesProvider.class);
+        DelegatingPropertiesProvider.checkServicePrefix("jms/broker", ActiveMqPropertiesProvider.class);
+        DelegatingPropertiesProvider.checkServicePrefix("redis/cache", RedisPropertiesProvider.class);
+        DelegatingPropertiesProvider.checkServicePrefix("cache", RedisPropertiesProvider.class);
+        DelegatingPropertiesProvider.checkServicePrefix("redis/cache", DummyPropertiesProvider.class);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testJdbcResourceBoundToRedis() {
+        DelegatingPropertiesProvider.checkServicePrefix(DEFAULT_CONTEXT_ROOT + "/jdbc/cache", RedisPropertiesProvider.class);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testJdbcResourceBoundToActiveMq() {
+        DelegatingPropertiesProvider.checkServicePrefix("jdbc/broker", ActiveMqPropertiesProvider.class);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testRedisResourceBoundToADatabase() {
+        DelegatingPropertiesProvider.checkServicePrefix("redis/db", PostgreSqlProperiesProvider.class);
+    }
+
     private void configureDelegatingPropertiesProvider(String serviceId, Properties properties) {
         propertiesProvider.setServiceId(serviceId);
         propertiesProvider.setProperties(properties);
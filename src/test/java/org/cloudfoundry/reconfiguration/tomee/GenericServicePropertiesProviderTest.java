@@ -51,6 +51,45 @@ public class GenericServicePropertiesProviderTest {
         Assert.assertEquals(properties.get("name2"), "val2");
     }
 
+    @Test
+    public void testCorrectPropertiesFoundStreaming() throws Exception {
+        GenericServicePropertiesProvider propertiesProvider =
+            new GenericServicePropertiesProvider(new TestEnvironmentAccessor(), new ObjectMapper(), true);
+
+        configureDelegatingPropertiesProvider(propertiesProvider, "ROOT/someId", new Properties());
+        Properties properties = propertiesProvider.provides();
+        Assert.assertEquals(properties.get("name1"), "val1");
+        Assert.assertEquals(properties.get("name2"), "val2");
+    }
+
+    @Test
+    public void testNestedCredentialsAreTheSameInBothModes() throws Exception {
+        GenericServicePropertiesProvider snapshotProvider =
+            new GenericServicePropertiesProvider(new TestEnvironmentAccessor("nestedGenericService.json"), new ObjectMapper());
+        configureDelegatingPropertiesProvider(snapshotProvider, "nestedId", new Properties());
+        Properties snapshotProperties = snapshotProvider.provides();
+
+        GenericServicePropertiesProvider streamingProvider =
+            new GenericServicePropertiesProvider(new TestEnvironmentAccessor("nestedGenericService.json"), new ObjectMapper(), true);
+        configureDelegatingPropertiesProvider(streamingProvider, "nestedId", new Properties());
+        Properties streamingProperties = streamingProvider.provides();
+
+        Assert.assertEquals(snapshotProperties, streamingProperties);
+        Assert.assertEquals("[host1, host2]", streamingProperties.get("hosts"));
+        Assert.assertEquals("{ca=certificate, verify=false}", streamingProperties.get("tls"));
+        Assert.assertEquals("1234", streamingProperties.get("port"));
+        Assert.assertEquals("1000.0", streamingProperties.get("ratio"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testProvidesStreamingWithUnknownServiceId() throws Exception {
+        GenericServicePropertiesProvider propertiesProvider =
+            new GenericServicePropertiesProvider(new TestEnvironmentAccessor(), new ObjectMapper(), true);
+
+        configureDelegatingPropertiesProvider(propertiesProvider, "no-such-service", new Properties());
+        propertiesProvider.provides();
+    }
+
     @Test(expected = ConfigurationException.class)
     public void testProvidesWithNoServiceId() throws Exception {
         GenericServicePropertiesProvider propertiesProvider = new GenericServicePropertiesProvider();
@@ -67,11 +106,21 @@ public class GenericServicePropertiesProviderTest {
 
     private class TestEnvironmentAccessor extends EnvironmentAccessor {
 
+        private final String fileName;
+
+        TestEnvironmentAccessor() {
+            this("validGenericService.json");
+        }
+
+        TestEnvironmentAccessor(String fileName) {
+            this.fileName = fileName;
+        }
+
         @Override
         public String getEnvValue(String key) {
 
             if (key.equalsIgnoreCase("VCAP_SERVICES")) {
-                return readTestDataFile("validGenericService.json");
+                return readTestDataFile(fileName);
             }
             return super.getEnvValue(key);
         }
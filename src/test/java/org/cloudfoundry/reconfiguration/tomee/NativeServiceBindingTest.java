@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cloud.cloudfoundry.DB2ServiceInfoCreator;
+import org.springframework.cloud.cloudfoundry.MysqlServiceInfoCreator;
+import org.springframework.cloud.cloudfoundry.PostgresqlServiceInfoCreator;
+import org.springframework.cloud.cloudfoundry.RelationalServiceInfoCreator;
+import org.springframework.cloud.cloudfoundry.SqlServerServiceInfoCreator;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cloud.service.ServiceInfo;
+import org.springframework.cloud.service.common.DB2ServiceInfo;
+import org.springframework.cloud.service.common.MysqlServiceInfo;
+import org.springframework.cloud.service.common.PostgresqlServiceInfo;
+import org.springframework.cloud.service.common.RelationalServiceInfo;
+import org.springframework.cloud.service.common.SqlServerServiceInfo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class NativeServiceBindingTest {
+
+    private static final String VCAP_SERVICES = VcapServicesSnapshotTest.readTestDataFile("relationalServices.json");
+
+    @After
+    public void tearDown() {
+        System.clearProperty(NativeServiceBinding.NATIVE_BINDING_PROPERTY);
+    }
+
+    @Test
+    public void testServiceInfoTypes() {
+        ServiceInfoIndex index = ServiceInfoIndex.of(NativeServiceBinding.createServiceInfos(getSnapshot()));
+
+        Assert.assertEquals(6, index.size());
+        Assert.assertTrue(index.get("my-mysql") instanceof MysqlServiceInfo);
+        Assert.assertTrue(index.get("my-postgres") instanceof PostgresqlServiceInfo);
+        Assert.assertTrue(index.get("my-db2") instanceof DB2ServiceInfo);
+        Assert.assertTrue(index.get("my-sqlserver") instanceof SqlServerServiceInfo);
+        Assert.assertFalse(index.get("my-api") instanceof RelationalServiceInfo);
+        Assert.assertFalse(index.get("my-oracle") instanceof RelationalServiceInfo);
+        Assert.assertEquals("my-api", index.get("my-api").getId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMatchesConnector() throws IOException {
+        ServiceInfoIndex index = ServiceInfoIndex.of(NativeServiceBinding.createServiceInfos(getSnapshot()));
+        List<RelationalServiceInfoCreator<?>> creators = Arrays.<RelationalServiceInfoCreator<?>>asList(new MysqlServiceInfoCreator(), new PostgresqlServiceInfoCreator(),
+                new DB2ServiceInfoCreator(), new SqlServerServiceInfoCreator());
+
+        Map<String, List<Map<String, Object>>> services = new ObjectMapper().readValue(VCAP_SERVICES, Map.class);
+        int compared = 0;
+        for (List<Map<String, Object>> entries : services.values()) {
+            for (Map<String, Object> entry : entries) {
+                for (RelationalServiceInfoCreator<?> creator : creators) {
+                    if (creator.accept(entry)) {
+                        RelationalServiceInfo expected = creator.createServiceInfo(entry);
+                        RelationalServiceInfo actual = (RelationalServiceInfo) index.get(expected.getId());
+                        Assert.assertEquals(expected.getClass(), actual.getClass());
+                        Assert.assertEquals(expected.getJdbcUrl(), actual.getJdbcUrl());
+                        Assert.assertEquals(expected.getUserName(), actual.getUserName());
+                        Assert.assertEquals(expected.getPassword(), actual.getPassword());
+                        compared++;
+                        break;
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(4, compared);
+    }
+
+    @Test
+    public void testBindIsOptIn() {
+        Assert.assertFalse(NativeServiceBinding.isEnabled());
+
+        System.setProperty(NativeServiceBinding.NATIVE_BINDING_PROPERTY, "true");
+        ServiceInfo serviceInfo = ServiceInfoIndex.bind(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES)).find("app/jdbc/my-postgres");
+        Assert.assertEquals("jdbc:postgresql://pg.example.com:5432/db?user=pg-user&password=pg-password", ((RelationalServiceInfo) serviceInfo).getJdbcUrl());
+    }
+
+    private static VcapServicesSnapshot getSnapshot() {
+        return VcapServicesSnapshot.getInstance(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES), null);
+    }
+}
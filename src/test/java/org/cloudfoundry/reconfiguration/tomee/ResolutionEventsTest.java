@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Flight Recorder is driven through reflection, so the tests still compile on JDKs without it
+ */
+public class ResolutionEventsTest {
+
+    private static final String SERVICE_LOOKUP = "org.cloudfoundry.reconfiguration.tomee.ServiceLookup";
+
+    @Test
+    public void testDisabledEventIsNotRecorded() {
+        ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.SERVICE_LOOKUP, "jdbc/db");
+        Assert.assertFalse(span.isRecording());
+        span.setPropertiesProvider(ResolutionEventsTest.class);
+        span.end();
+    }
+
+    @Test
+    public void testEventIsRecorded() throws Exception {
+        Assume.assumeTrue(ResolutionEvents.isAvailable());
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        recordingClass.getMethod("enable", String.class).invoke(recording, SERVICE_LOOKUP);
+        recordingClass.getMethod("start").invoke(recording);
+
+        ResolutionEvents.enter("app/jdbc/db");
+        try {
+            ResolutionEvents.Span span = ResolutionEvents.begin(ResolutionEvents.Phase.SERVICE_LOOKUP);
+            Assert.assertTrue(span.isRecording());
+            span.setPropertiesProvider(ResolutionEventsTest.class);
+            span.end();
+        } finally {
+            ResolutionEvents.exit();
+        }
+
+        recordingClass.getMethod("stop").invoke(recording);
+        File dump = File.createTempFile("resolution", ".jfr");
+        try {
+            recordingClass.getMethod("dump", Path.class).invoke(recording, dump.toPath());
+            recordingClass.getMethod("close").invoke(recording);
+
+            List<?> events = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile").getMethod("readAllEvents", Path.class).invoke(null, dump.toPath());
+            Assert.assertEquals(1, events.size());
+            Object event = events.get(0);
+            Method getString = event.getClass().getMethod("getString", String.class);
+            Assert.assertEquals("app/jdbc/db", getString.invoke(event, "resourceId"));
+            Assert.assertEquals(ResolutionEventsTest.class.getName(), getString.invoke(event, "propertiesProvider"));
+        } finally {
+            Assert.assertTrue(dump.delete());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.cloudfoundry.reconfiguration.tomee.dummy.DummyServiceInfo;
+import org.cloudfoundry.reconfiguration.tomee.dummy.JdbcServiceInfo;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cloud.service.ServiceInfo;
+
+import java.util.Arrays;
+
+public class ServiceInfoIndexTest {
+
+    @Test
+    public void testFindWithContextRootAndJdbcPrefix() {
+        ServiceInfo jdbcServiceInfo = new JdbcServiceInfo();
+        ServiceInfoIndex index = ServiceInfoIndex.of(Arrays.<ServiceInfo>asList(new DummyServiceInfo(), jdbcServiceInfo));
+
+        Assert.assertSame(jdbcServiceInfo, index.find("ROOT/" + DelegatingPropertiesProvider.PREFIX_JDBC + JdbcServiceInfo.ID));
+        Assert.assertSame(jdbcServiceInfo, index.find(DelegatingPropertiesProvider.PREFIX_JDBC + JdbcServiceInfo.ID));
+        Assert.assertSame(jdbcServiceInfo, index.find(JdbcServiceInfo.ID));
+        Assert.assertNull(index.find("ROOT/no-such-service"));
+    }
+
+    @Test
+    public void testFindWithNonRelationalPrefix() {
+        ServiceInfo serviceInfo = new JdbcServiceInfo();
+        ServiceInfoIndex index = ServiceInfoIndex.of(Arrays.<ServiceInfo>asList(serviceInfo));
+
+        Assert.assertSame(serviceInfo, index.find("ROOT/" + DelegatingPropertiesProvider.PREFIX_JMS + JdbcServiceInfo.ID));
+        Assert.assertSame(serviceInfo, index.find(DelegatingPropertiesProvider.PREFIX_JMS + JdbcServiceInfo.ID));
+        Assert.assertSame(serviceInfo, index.find("ROOT/" + DelegatingPropertiesProvider.PREFIX_REDIS + JdbcServiceInfo.ID));
+    }
+
+    @Test
+    public void testFirstServiceWithDuplicateIdWins() {
+        ServiceInfo first = new JdbcServiceInfo();
+        ServiceInfoIndex index = ServiceInfoIndex.of(Arrays.<ServiceInfo>asList(first, new JdbcServiceInfo()));
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertSame(first, index.get(JdbcServiceInfo.ID));
+    }
+}
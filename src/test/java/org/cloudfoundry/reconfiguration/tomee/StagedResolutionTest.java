@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.cloudfoundry.reconfiguration.tomee.dummy.DummyServiceInfo;
+import org.cloudfoundry.reconfiguration.tomee.dummy.JdbcServiceInfo;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeSet;
+
+public class StagedResolutionTest {
+
+    private static final String VCAP_SERVICES = VcapServicesSnapshotTest.readTestDataFile("validGenericService.json");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        EnvironmentAccessor environment = new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES);
+        File file = temporaryFolder.newFile("staged-resolution");
+        StagedResolution.stage(environment).write(file);
+
+        StagedResolution stagedResolution = StagedResolution.getInstance(environment, file);
+
+        Assert.assertNotNull(stagedResolution);
+        Properties configuration = stagedResolution.getResolutionPlan().apply("ROOT/" + DelegatingPropertiesProvider.PREFIX_JDBC + JdbcServiceInfo.ID, new Properties());
+        Assert.assertEquals(JdbcServiceInfo.ID, configuration.getProperty(JdbcServiceInfo.CONFIG_KEY));
+        Assert.assertEquals(DummyServiceInfo.CONFIG_VALUE,
+                stagedResolution.getResolutionPlan().apply(DummyServiceInfo.class.getName(), new Properties()).getProperty(DummyServiceInfo.CONFIG_KEY));
+
+        Properties credentials = stagedResolution.getGenericCredentials("SomeId");
+        Assert.assertEquals("val1", credentials.getProperty("name1"));
+        Assert.assertNull(stagedResolution.getGenericCredentials("no-such-service"));
+    }
+
+    @Test
+    public void testFileIsReadableByItsOwnerOnly() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "staged-resolution");
+        Assume.assumeTrue(file.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+        StagedResolution.stage(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES)).write(file);
+
+        Assert.assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(file.toPath()));
+    }
+
+    @Test
+    public void testChangedVcapServicesIsIgnored() throws Exception {
+        File file = temporaryFolder.newFile("staged-resolution");
+        StagedResolution.stage(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES)).write(file);
+
+        Assert.assertNull(StagedResolution.getInstance(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES.replace("val1", "val3")), file));
+    }
+
+    @Test
+    public void testChangedSystemPropertyIsIgnored() throws Exception {
+        File file = temporaryFolder.newFile("staged-resolution");
+        StagedResolution.stage(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES)).write(file);
+
+        System.setProperty(ResourceSettings.SYSTEM_PROPERTY_PREFIX + "max-connections", "10");
+        try {
+            Assert.assertNull(StagedResolution.getInstance(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES), file));
+        } finally {
+            System.clearProperty(ResourceSettings.SYSTEM_PROPERTY_PREFIX + "max-connections");
+        }
+    }
+
+    @Test
+    public void testFileIsVerifiedOnce() throws Exception {
+        EnvironmentAccessor environment = new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES);
+        File file = temporaryFolder.newFile("staged-resolution");
+        StagedResolution.stage(environment).write(file);
+        StagedResolution stagedResolution = StagedResolution.getInstance(environment, file);
+        Assert.assertNotNull(stagedResolution);
+
+        Assert.assertTrue(file.delete());
+        Assert.assertSame(stagedResolution, StagedResolution.getInstance(environment, file));
+        Assert.assertSame(stagedResolution, StagedResolution.getInstance(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(new String(VCAP_SERVICES)), file));
+        Assert.assertNull(StagedResolution.getInstance(new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES.replace("val1", "val3")), file));
+    }
+
+    @Test
+    public void testInputs() {
+        String inputs = StagedResolution.getInputs(VCAP_SERVICES, new ContainerResources(1024, 4, 2));
+
+        Assert.assertEquals(inputs, StagedResolution.getInputs(new String(VCAP_SERVICES), new ContainerResources(1024, 4, 2)));
+        Assert.assertNotEquals(inputs, StagedResolution.getInputs(VCAP_SERVICES, new ContainerResources(2048, 4, 2)));
+        Assert.assertNotEquals(inputs, StagedResolution.getInputs(VCAP_SERVICES, new ContainerResources(1024, 8, 2)));
+        Assert.assertNotEquals(inputs, StagedResolution.getInputs(VCAP_SERVICES, new ContainerResources(1024, 4, 3)));
+
+        System.setProperty(StagedResolution.STAGED_RESOLUTION_PROPERTY, "staged-resolution");
+        try {
+            Assert.assertEquals(inputs, StagedResolution.getInputs(VCAP_SERVICES, new ContainerResources(1024, 4, 2)));
+        } finally {
+            System.clearProperty(StagedResolution.STAGED_RESOLUTION_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testApplicationClassLoader() throws Exception {
+        File application = temporaryFolder.newFolder("application");
+        Assert.assertTrue(new File(application, "WEB-INF/classes").mkdirs());
+        Assert.assertTrue(new File(application, "WEB-INF/lib").mkdirs());
+        Assert.assertTrue(new File(application, "WEB-INF/lib/driver.jar").createNewFile());
+        Assert.assertTrue(new File(application, "WEB-INF/lib/notes.txt").createNewFile());
+        File library = temporaryFolder.newFile("library.jar");
+
+        try (URLClassLoader classLoader = StagedResolution.getApplicationClassLoader(new String[] { application.getPath(), library.getPath() }, getClass().getClassLoader())) {
+            Assert.assertEquals(Arrays.asList(new File(application, "WEB-INF/classes").toURI().toURL(), new File(application, "WEB-INF/lib/driver.jar").toURI().toURL(),
+                    library.toURI().toURL()), Arrays.asList(classLoader.getURLs()));
+            Assert.assertSame(getClass().getClassLoader(), classLoader.getParent());
+        }
+    }
+
+    @Test
+    public void testReferencedServiceIds() throws Exception {
+        File application = temporaryFolder.newFolder("application");
+        Assert.assertTrue(new File(application, "WEB-INF").mkdirs());
+        Files.write(new File(application, "WEB-INF/resources.xml").toPath(), Arrays.asList(
+                "<resources>",
+                "  <Resource id=\"jdbc/orders\" type=\"DataSource\" properties-provider=\"" + DelegatingPropertiesProvider.class.getName() + "\"/>",
+                "  <Resource id=\"jdbc/orders-ro\" type=\"DataSource\" properties-provider=\"" + DelegatingPropertiesProvider.class.getName() + "\"/>",
+                "  <Resource id=\"jdbc/local\" type=\"DataSource\"/>",
+                "</resources>"), StandardCharsets.UTF_8);
+        File tomee = temporaryFolder.newFolder("tomee");
+        Assert.assertTrue(new File(tomee, "conf").mkdirs());
+        Files.write(new File(tomee, "conf/tomee.xml").toPath(), Arrays.asList(
+                "<tomee>",
+                "  <Resource id=\"redis/cache\" properties-provider=\"" + DelegatingPropertiesProvider.class.getName() + "\"/>",
+                "</tomee>"), StandardCharsets.UTF_8);
+        File library = temporaryFolder.newFile("library.jar");
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("cache", "orders", "orders-ro")),
+                StagedResolution.getReferencedServiceIds(new String[] { application.getPath(), tomee.getPath(), library.getPath() }));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void testMissingApplicationLibrary() throws Exception {
+        StagedResolution.getApplicationClassLoader(new String[] { new File(temporaryFolder.getRoot(), "no-such-jar.jar").getPath() }, getClass().getClassLoader());
+    }
+
+    @Test
+    public void testMissingOrCorruptFileIsIgnored() throws Exception {
+        EnvironmentAccessor environment = new VcapServicesSnapshotTest.StaticEnvironmentAccessor(VCAP_SERVICES);
+
+        Assert.assertNull(StagedResolution.getInstance(environment, new File(temporaryFolder.getRoot(), "no-such-file")));
+        Assert.assertNull(StagedResolution.getInstance(environment, temporaryFolder.newFile("empty")));
+    }
+
+    @Test
+    public void testDigest() {
+        Assert.assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", StagedResolution.digest(null));
+        Assert.assertEquals(StagedResolution.digest(VCAP_SERVICES), StagedResolution.digest(new String(VCAP_SERVICES)));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.core.JsonFactory;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.util.Scanner;
+
+public class VcapServicesSnapshotTest {
+
+    private static final String VCAP_SERVICES = readTestDataFile("validGenericService.json");
+
+    @Test
+    public void testIndexes() {
+        VcapServicesSnapshot snapshot = VcapServicesSnapshot.getInstance(new StaticEnvironmentAccessor(VCAP_SERVICES), null);
+
+        Assert.assertEquals(2, snapshot.getServices().size());
+        Assert.assertEquals("my-test-resource", snapshot.getServiceByCredentialsId("SOMEID").getName());
+        Assert.assertEquals("512mb", snapshot.getServiceByName("my-db").getPlan());
+        Assert.assertTrue(snapshot.getServiceByName("my-db").hasTag("mysql"));
+        Assert.assertEquals("3306", snapshot.getServiceByName("my-db").getCredential("port"));
+        Assert.assertEquals(1, snapshot.getServicesByLabel("p-mysql").size());
+        Assert.assertNull(snapshot.getServiceByName("no-such-service"));
+    }
+
+    @Test
+    public void testSnapshotIsSharedWhileContentIsUnchanged() {
+        VcapServicesSnapshot snapshot = VcapServicesSnapshot.getInstance(new StaticEnvironmentAccessor(VCAP_SERVICES), null);
+
+        Assert.assertSame(snapshot, VcapServicesSnapshot.getInstance(new StaticEnvironmentAccessor(new String(VCAP_SERVICES)), null));
+        Assert.assertNotSame(snapshot, VcapServicesSnapshot.getInstance(new StaticEnvironmentAccessor(null), null));
+    }
+
+    @Test
+    public void testStreamingParseMatchesObjectMapper() {
+        for (String fileName : new String[] { "validGenericService.json", "relationalServices.json" }) {
+            String content = readTestDataFile(fileName);
+            VcapServicesSnapshot expected = VcapServicesSnapshot.parse(content, new ObjectMapper());
+            VcapServicesSnapshot actual = VcapServicesSnapshot.parse(content, new JsonFactory());
+
+            Assert.assertEquals(expected.getServices().size(), actual.getServices().size());
+            for (VcapService service : expected.getServices()) {
+                VcapService parsed = actual.getServiceByName(service.getName());
+                Assert.assertEquals(service.getLabel(), parsed.getLabel());
+                Assert.assertEquals(service.getPlan(), parsed.getPlan());
+                Assert.assertEquals(service.getTags(), parsed.getTags());
+                Assert.assertEquals(service.getCredentials(), parsed.getCredentials());
+            }
+        }
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testNotAnObject() {
+        VcapServicesSnapshot.parse("[]", new JsonFactory());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testInvalidContent() {
+        VcapServicesSnapshot.getInstance(new StaticEnvironmentAccessor("{invalid"), null);
+    }
+
+    static String readTestDataFile(String fileName) {
+        try (Scanner scanner = new Scanner(new InputStreamReader(VcapServicesSnapshotTest.class.getResourceAsStream(fileName), "UTF-8"))) {
+            return scanner.useDelimiter("\\Z").next();
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static final class StaticEnvironmentAccessor extends EnvironmentAccessor {
+
+        private final String vcapServices;
+
+        StaticEnvironmentAccessor(String vcapServices) {
+            this.vcapServices = vcapServices;
+        }
+
+        @Override
+        public String getEnvValue(String key) {
+            return VcapServicesSnapshot.VCAP_SERVICES.equals(key) ? vcapServices : super.getEnvValue(key);
+        }
+    }
+}
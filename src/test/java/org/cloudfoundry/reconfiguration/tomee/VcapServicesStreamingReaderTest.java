@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.cloud.cloudfoundry.com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+public class VcapServicesStreamingReaderTest {
+
+    private static final int SERVICE_COUNT = 200;
+
+    private static final int CERTIFICATE_LENGTH = 16 * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final VcapServicesStreamingReader reader = new VcapServicesStreamingReader(objectMapper.getFactory());
+
+    @Test
+    public void testReadCredentials() {
+        Properties properties = new Properties();
+
+        Assert.assertTrue(reader.readCredentials(VcapServicesSnapshotTest.readTestDataFile("validGenericService.json"), "SOMEID", properties));
+        Assert.assertEquals("val1", properties.getProperty("name1"));
+        Assert.assertEquals("org.cloudfoundry.test.MyType", properties.getProperty("class-name"));
+        Assert.assertEquals(5, properties.size());
+    }
+
+    @Test
+    public void testReadCredentialsWithNestedValues() {
+        Properties properties = new Properties();
+
+        Assert.assertTrue(reader.readCredentials(generateVcapServices(3, 16), "service-2", properties));
+        Assert.assertEquals("service-2", properties.getProperty("id"));
+        Assert.assertEquals("user-2", properties.getProperty("username"));
+        Assert.assertTrue(properties.getProperty("ca").startsWith("[MIID"));
+    }
+
+    @Test
+    public void testServiceNotFound() {
+        Properties properties = new Properties();
+
+        Assert.assertFalse(reader.readCredentials(generateVcapServices(3, 16), "no-such-service", properties));
+        Assert.assertFalse(reader.readCredentials(null, "service-1", properties));
+        Assert.assertTrue(properties.isEmpty());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testInvalidContent() {
+        reader.readCredentials("{\"user-provided\": [{\"credentials\": {", "service-1", new Properties());
+    }
+
+    @Test
+    public void testStreamingAllocatesLessThanTree() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled());
+
+        String content = generateVcapServices(SERVICE_COUNT, CERTIFICATE_LENGTH);
+        String lastServiceId = "service-" + (SERVICE_COUNT - 1);
+        readWithTree(content, lastServiceId);
+        readWithStreaming(content, lastServiceId);
+
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+        readWithTree(content, lastServiceId);
+        long treeAllocation = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+
+        start = threadMXBean.getThreadAllocatedBytes(threadId);
+        readWithStreaming(content, lastServiceId);
+        long streamingAllocation = threadMXBean.getThreadAllocatedBytes(threadId) - start;
+
+        Assert.assertTrue("streaming allocated " + streamingAllocation + " bytes, tree allocated " + treeAllocation + " bytes", streamingAllocation * 10 < treeAllocation);
+    }
+
+    private void readWithTree(String content, String credentialsId) {
+        Assert.assertNotNull(VcapServicesSnapshot.parse(content, objectMapper).getServiceByCredentialsId(credentialsId));
+    }
+
+    private void readWithStreaming(String content, String credentialsId) {
+        Assert.assertTrue(reader.readCredentials(content, credentialsId, new Properties()));
+    }
+
+    private static String generateVcapServices(int serviceCount, int certificateLength) {
+        StringBuilder certificate = new StringBuilder(certificateLength);
+        while (certificate.length() < certificateLength) {
+            certificate.append("MIIDXTCCAkWgAwIBAgIJAKL0UG+mRKSzMA0GCSqGSIb3DQEBCwUAMEUxCzAJBgNV");
+        }
+
+        StringBuilder content = new StringBuilder("{\"user-provided\": [");
+        for (int i = 0; i < serviceCount; i++) {
+            if (i > 0) {
+                content.append(',');
+            }
+            content.append("{\"name\": \"service-").append(i).append("\", \"label\": \"user-provided\", \"tags\": [\"tag\"], \"credentials\": {")
+                    .append("\"certificate\": \"").append(certificate).append("\", ")
+                    .append("\"ca\": [\"").append(certificate).append("\"], ")
+                    .append("\"username\": \"user-").append(i).append("\", ")
+                    .append("\"id\": \"service-").append(i).append("\"}}");
+        }
+        return content.append("]}").toString();
+    }
+}
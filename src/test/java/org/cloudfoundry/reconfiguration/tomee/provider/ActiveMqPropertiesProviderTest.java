@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerFilter;
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.pool.PooledConnectionFactory;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cloud.service.BaseServiceInfo;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import javax.jms.Connection;
+import javax.jms.JMSSecurityException;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.lang.reflect.Method;
+import java.util.Properties;
+
+public class ActiveMqPropertiesProviderTest {
+
+    private static final BaseServiceInfo SERVICE_INFO = new BaseServiceInfo("my-broker");
+
+    @Test
+    public void testCanProvide() {
+        Assert.assertTrue(getProvider("{\"activemq\": [{\"name\": \"my-broker\", \"credentials\": {}}]}").canProvide(SERVICE_INFO));
+        Assert.assertTrue(getProvider("{\"user-provided\": [{\"name\": \"my-broker\", \"credentials\": {\"uri\": \"failover:(tcp://a:61616)\"}}]}").canProvide(SERVICE_INFO));
+        Assert.assertFalse(getProvider("{\"p-mysql\": [{\"name\": \"my-broker\", \"credentials\": {\"uri\": \"mysql://host/db\"}}]}").canProvide(SERVICE_INFO));
+        Assert.assertFalse(getProvider("{\"activemq\": [{\"name\": \"other\", \"credentials\": {}}]}").canProvide(SERVICE_INFO));
+    }
+
+    @Test
+    public void testProvide() {
+        Properties properties = new Properties();
+        properties.setProperty("max-active", "5");
+        properties.setProperty(ActiveMqPropertiesProvider.PROPERTY_MAX_CONNECTIONS, "2");
+        getProvider(getVcapServices("failover:(tcp://a:61616,tcp://b:61616)?randomize=false")).provide(SERVICE_INFO, properties);
+
+        Assert.assertEquals("failover:(tcp://a:61616,tcp://b:61616)?randomize=false&jms.userName=user&jms.password=p%26ss",
+                properties.getProperty(ActiveMqPropertiesProvider.PROPERTY_BROKER_URL));
+        Assert.assertEquals("5", properties.getProperty(ActiveMqPropertiesProvider.PROPERTY_MAX_SESSIONS));
+        Assert.assertEquals("2", properties.getProperty(ActiveMqPropertiesProvider.PROPERTY_MAX_CONNECTIONS));
+        Assert.assertEquals("true", properties.getProperty(ActiveMqPropertiesProvider.PROPERTY_USE_ANONYMOUS_PRODUCERS));
+        Assert.assertFalse(properties.containsKey("max-active"));
+    }
+
+    @Test
+    public void testWithOption() {
+        Assert.assertEquals("tcp://host:61616?jms.userName=user", ActiveMqPropertiesProvider.withOption("tcp://host:61616", "jms.userName", "user"));
+        Assert.assertEquals("failover:(tcp://host:61616?wireFormat.maxInactivityDuration=0)?jms.userName=user",
+                ActiveMqPropertiesProvider.withOption("failover:(tcp://host:61616?wireFormat.maxInactivityDuration=0)", "jms.userName", "user"));
+        Assert.assertEquals("tcp://host:61616?jms.userName=other", ActiveMqPropertiesProvider.withOption("tcp://host:61616?jms.userName=other", "jms.userName", "user"));
+    }
+
+    @Test
+    public void testOptionsDecodedByActiveMq() {
+        for (String brokerUrl : new String[] { "tcp://host:61616", "tcp://host:61616?soTimeout=1000", "failover:(tcp://a:61616,tcp://b:61616)?randomize=false" }) {
+            String url = ActiveMqPropertiesProvider.withOption(ActiveMqPropertiesProvider.withOption(brokerUrl, "jms.userName", "us=er"), "jms.password", "p&ss %2B");
+            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(url);
+            Assert.assertEquals(url, "us=er", connectionFactory.getUserName());
+            Assert.assertEquals(url, "p&ss %2B", connectionFactory.getPassword());
+        }
+    }
+
+    @Test
+    public void testEmbeddedBroker() throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setPlugins(new BrokerPlugin[] { new CredentialsPlugin("user", "p&ss") });
+        broker.addConnector("tcp://127.0.0.1:0");
+        broker.start();
+        String brokerUrl = broker.getTransportConnectors().get(0).getPublishableConnectString();
+        PooledConnectionFactory connectionFactory = null;
+        try {
+            Properties properties = new Properties();
+            getProvider(getVcapServices(brokerUrl)).provide(SERVICE_INFO, properties);
+            connectionFactory = createConnectionFactory(properties);
+
+            for (int i = 0; i < 3; i++) {
+                Connection connection = connectionFactory.createConnection();
+                try {
+                    Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                    session.createProducer(session.createQueue("queue")).send(session.createTextMessage("message " + i));
+                } finally {
+                    connection.close();
+                }
+            }
+            Assert.assertEquals(1, connectionFactory.getNumConnections());
+
+            Connection connection = connectionFactory.createConnection();
+            try {
+                connection.start();
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                Queue queue = session.createQueue("queue");
+                MessageConsumer consumer = session.createConsumer(queue);
+                for (int i = 0; i < 3; i++) {
+                    Assert.assertEquals("message " + i, ((TextMessage) consumer.receive(10000)).getText());
+                }
+            } finally {
+                connection.close();
+            }
+        } finally {
+            if (connectionFactory != null) {
+                connectionFactory.stop();
+            }
+            broker.stop();
+        }
+    }
+
+    private static ActiveMqPropertiesProvider getProvider(final String vcapServices) {
+        return new ActiveMqPropertiesProvider(new EnvironmentAccessor() {
+
+            @Override
+            public String getEnvValue(String key) {
+                return "VCAP_SERVICES".equals(key) ? vcapServices : super.getEnvValue(key);
+            }
+        });
+    }
+
+    private static String getVcapServices(String brokerUrl) {
+        return "{\"user-provided\": [{\"name\": \"my-broker\", \"tags\": [\"activemq\"], \"credentials\": {\"broker_url\": \"" + brokerUrl
+                + "\", \"username\": \"user\", \"password\": \"p&ss\"}}]}";
+    }
+
+    /**
+     * Create the connection factory the way TomEE does: the broker URL is passed to the constructor and the other properties to the setters
+     */
+    private static PooledConnectionFactory createConnectionFactory(Properties properties) throws Exception {
+        PooledConnectionFactory connectionFactory = new PooledConnectionFactory(properties.getProperty(ActiveMqPropertiesProvider.PROPERTY_BROKER_URL));
+        for (String name : properties.stringPropertyNames()) {
+            if (ActiveMqPropertiesProvider.PROPERTY_BROKER_URL.equals(name)) {
+                continue;
+            }
+            String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            String value = properties.getProperty(name);
+            for (Method method : PooledConnectionFactory.class.getMethods()) {
+                if (method.getName().equals(setter) && method.getParameterTypes().length == 1) {
+                    Class<?> type = method.getParameterTypes()[0];
+                    method.invoke(connectionFactory, type == int.class ? Integer.valueOf(value) : type == long.class ? Long.valueOf(value) : Boolean.valueOf(value));
+                }
+            }
+        }
+        return connectionFactory;
+    }
+
+    /**
+     * Rejects the connections which do not present the credentials of the service
+     */
+    private static final class CredentialsPlugin implements BrokerPlugin {
+
+        private final String userName;
+
+        private final String password;
+
+        private CredentialsPlugin(String userName, String password) {
+            this.userName = userName;
+            this.password = password;
+        }
+
+        @Override
+        public Broker installPlugin(Broker broker) {
+            return new BrokerFilter(broker) {
+
+                @Override
+                public void addConnection(ConnectionContext context, ConnectionInfo info) throws Exception {
+                    if (!userName.equals(info.getUserName()) || !password.equals(info.getPassword())) {
+                        throw new JMSSecurityException("Invalid credentials: " + info.getUserName());
+                    }
+                    super.addConnection(context, info);
+                }
+            };
+        }
+    }
+}
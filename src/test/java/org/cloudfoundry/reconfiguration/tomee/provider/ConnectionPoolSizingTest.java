@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.cloudfoundry.reconfiguration.tomee.provider;
+
+import org.cloudfoundry.reconfiguration.tomee.ConfigurationException;
+import org.cloudfoundry.reconfiguration.tomee.ContainerResources;
+import org.cloudfoundry.reconfiguration.tomee.ResourceSettings;
+import org.cloudfoundry.reconfiguration.tomee.VcapService;
+import org.cloudfoundry.reconfiguration.tomee.VcapServicesSnapshot;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cloud.util.EnvironmentAccessor;
+
+import java.util.Properties;
+
+public class ConnectionPoolSizingTest {
+
+    private static final String RESOURCE = "jdbc/db";
+
+    @Test
+    public void testSizedByProcessors() {
+        ConnectionPoolSizing sizing = new ConnectionPoolSizing(new ContainerResources(1024, 4));
+        Assert.assertEquals(9, sizing.getMaxActive(RESOURCE, new ResourceSettings(new Properties(), null)));
+    }
+
+    @Test
+    public void testSizedByMemory() {
+        ConnectionPoolSizing sizing = new ConnectionPoolSizing(new ContainerResources(128, 16));
+        Assert.assertEquals(4, sizing.getMaxActive(RESOURCE, new ResourceSettings(new Properties(), null)));
+    }
+
+    @Test
+    public void testNeverBelowFixedSize() {
+        ConnectionPoolSizing sizing = new ConnectionPoolSizing(new ContainerResources(32, 1));
+        Assert.assertEquals(ConnectionPoolSizing.FIXED_MAX_ACTIVE, sizing.getMaxActive(RESOURCE, new ResourceSettings(new Properties(), null)));
+    }
+
+    @Test
+    public void testSmallPlanIsCapped() {
+        ConnectionPoolSizing sizing = new ConnectionPoolSizing(new ContainerResources(ContainerResources.UNKNOWN, 8));
+        VcapService service = getService("{\"p-mysql\": [{\"name\": \"db\", \"plan\": \"shared-vr\", \"credentials\": {}}]}");
+        Assert.assertEquals(ConnectionPoolSizing.SMALL_PLAN_MAX_ACTIVE, sizing.getMaxActive(RESOURCE, new ResourceSettings(new Properties(), service)));
+    }
+
+    @Test
+    public void testOverrides() {
+        ConnectionPoolSizing sizing = new ConnectionPoolSizing(new ContainerResources(1024, 4));
+
+        Properties resourceProperties = new Properties();
+        resourceProperties.setProperty(ConnectionPoolSizing.SETTING_MAX_ACTIVE, "15");
+        Assert.assertEquals(15, sizing.getMaxActive(RESOURCE, new ResourceSettings(resourceProperties, null)));
+        Assert.assertFalse(resourceProperties.containsKey(ConnectionPoolSizing.SETTING_MAX_ACTIVE));
+
+        VcapService service = getService("{\"p-mysql\": [{\"name\": \"db\", \"tags\": [\"pool-sizing=fixed\"], \"credentials\": {}}]}");
+        Assert.assertEquals(ConnectionPoolSizing.FIXED_MAX_ACTIVE, sizing.getMaxActive(RESOURCE, new ResourceSettings(new Properties(), service)));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testUnsupportedPoolSizing() {
+        Properties resourceProperties = new Properties();
+        resourceProperties.setProperty(ConnectionPoolSizing.SETTING_POOL_SIZING, "huge");
+        new ConnectionPoolSizing(new ContainerResources(1024, 4)).getMaxActive(RESOURCE, new ResourceSettings(resourceProperties, null));
+    }
+
+    static VcapService getService(final String vcapServices) {
+        return VcapServicesSnapshot.getInstance(new EnvironmentAccessor() {
+
+            @Override
+            public String getEnvValue(String key) {
+                return "VCAP_SERVICES".equals(key) ? vcapServices : super.getEnvValue(key);
+            }
+        }, null).getServices().get(0);
+    }
+}